@@ -0,0 +1,132 @@
+package GamaGTFSUtils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Cuts a CSV file into byte ranges that can be parsed independently.
+ *
+ * Every boundary is placed just after a line break that is outside a quoted field, so that
+ * no record (even one whose quoted fields contain line breaks) is split across two ranges.
+ * The quote state is exact: the file is read once from the start, in large blocks, keeping only
+ * the parity of the quotes met, and the scan stops at the last boundary.
+ */
+public class CsvChunkSplitter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Block size of the scan looking for the boundaries. */
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Splits a CSV file into at most {@code chunkCount} ranges of similar size.
+     *
+     * @param file       The CSV file.
+     * @param chunkCount The wanted number of ranges.
+     * @return The boundaries b[0..n]: b[0] is the end of the header line, the range i spans
+     *         [b[i], b[i+1]) and b[n] is the file length.
+     */
+    public static long[] split(File file, int chunkCount) throws IOException {
+        long length = file.length();
+        int chunks = Math.max(1, chunkCount);
+        long[] bounds = new long[chunks + 1];
+        int found = 0;
+
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+            long pos = 0;             // position du premier octet du bloc
+            boolean inQuotes = false;
+            boolean blankLine = true; // la ligne courante ne contient que des blancs
+            long target = -1;         // -1 tant que l'en-tête n'a pas été trouvé
+            int n;
+            scan:
+            while ((n = in.read(buffer)) > 0) {
+                for (int k = 0; k < n; k++) {
+                    int b = buffer[k];
+                    if (b == '"') {
+                        inQuotes = !inQuotes; // "" (guillemet échappé) bascule deux fois
+                    } else if (b == '\n' && !inQuotes) {
+                        long lineEnd = pos + k + 1;
+                        if (target < 0) {
+                            // fin de l'en-tête : on ignore les lignes vides qui le précèdent
+                            if (!blankLine) {
+                                bounds[found++] = lineEnd;
+                                if (found == chunks) break scan;
+                                target = lineEnd + (length - lineEnd) / chunks;
+                            }
+                        } else if (lineEnd >= target && lineEnd < length) {
+                            bounds[found++] = lineEnd;
+                            if (found == chunks) break scan;
+                            target = bounds[0] + (length - bounds[0]) * found / chunks;
+                        }
+                        continue;
+                    }
+                    if (blankLine && (b & 0xFF) > ' ' && (b & 0xFF) != 0xEF && (b & 0xFF) != 0xBB && (b & 0xFF) != 0xBF) {
+                        blankLine = false;
+                    }
+                }
+                pos += n;
+            }
+        }
+        if (found == 0) bounds[found++] = length; // fichier réduit à l'en-tête
+        long[] result = new long[found + 1];
+        System.arraycopy(bounds, 0, result, 0, found);
+        result[found] = length;
+        return result;
+    }
+
+    /**
+     * Opens a stream over the bytes [start, end) of a file.
+     */
+    public static InputStream openRange(File file, long start, long end) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            in.getChannel().position(start);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new BufferedInputStream(new RangeInputStream(in, end - start), BUFFER_SIZE);
+    }
+
+    /** Stream that stops after a fixed number of bytes. */
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = super.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = super.read(buf, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+    }
+}
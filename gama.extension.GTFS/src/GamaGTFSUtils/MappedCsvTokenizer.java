@@ -0,0 +1,305 @@
+package GamaGTFSUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Zero-copy CSV tokenizer for GTFS files, working over a memory-mapped byte buffer.
+ *
+ * The tokenizer only records where each field starts and ends in the buffer. Numbers and
+ * GTFS times are parsed directly from the bytes; a String is created only when a caller asks
+ * for the text of a field. Quoted fields (with "" escapes and embedded line breaks) are supported.
+ * Text is decoded as UTF-8.
+ */
+public class MappedCsvTokenizer {
+
+    /** Value returned by getTime for an empty or invalid time. */
+    public static final int NO_TIME = -1;
+
+    private final ByteBuffer buffer;
+    private final int end;
+    private final byte separator;
+    private int position;
+
+    private int fieldCount = 0;
+    private int[] fieldStart = new int[32];
+    private int[] fieldEnd = new int[32];
+    private boolean[] fieldEscaped = new boolean[32]; // champ entre guillemets contenant des ""
+    private byte[] scratch = new byte[64];
+
+    /**
+     * Creates a tokenizer over the bytes [start, end) of a buffer.
+     */
+    public MappedCsvTokenizer(ByteBuffer buffer, int start, int end, char separator) {
+        this.buffer = buffer;
+        this.position = start;
+        this.end = end;
+        this.separator = (byte) separator;
+    }
+
+    /**
+     * Maps a region of a file in read-only mode (a single mapping is limited to 2 GB).
+     */
+    public static MappedByteBuffer map(File file, long start, long end) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("Region too large to be mapped at once in " + file.getName() + ": " + (end - start) + " bytes");
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return false when the end of the region is reached.
+     */
+    public boolean nextRecord() {
+        if (position >= end) return false;
+        fieldCount = 0;
+        int p = position;
+        while (true) {
+            if (fieldCount == fieldStart.length) growFields();
+            boolean escaped = false;
+            int fStart, fEnd;
+            if (p < end && buffer.get(p) == '"') {
+                // Champ entre guillemets : on cherche le guillemet fermant (les "" sont échappés)
+                fStart = p + 1;
+                p++;
+                while (p < end) {
+                    byte b = buffer.get(p);
+                    if (b == '"') {
+                        if (p + 1 < end && buffer.get(p + 1) == '"') {
+                            escaped = true;
+                            p += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    p++;
+                }
+                fEnd = p;
+                if (p < end) p++; // guillemet fermant
+                // caractères parasites éventuels entre le guillemet et le séparateur
+                while (p < end && buffer.get(p) != separator && buffer.get(p) != '\n') p++;
+            } else {
+                fStart = p;
+                while (p < end) {
+                    byte b = buffer.get(p);
+                    if (b == separator || b == '\n') break;
+                    p++;
+                }
+                fEnd = p;
+                if (fEnd > fStart && buffer.get(fEnd - 1) == '\r') fEnd--;
+            }
+            fieldStart[fieldCount] = fStart;
+            fieldEnd[fieldCount] = fEnd;
+            fieldEscaped[fieldCount] = escaped;
+            fieldCount++;
+
+            if (p >= end) {
+                position = end;
+                return true;
+            }
+            byte b = buffer.get(p);
+            p++;
+            if (b == '\n') {
+                position = p;
+                return true;
+            }
+            // sinon b == séparateur : champ suivant
+        }
+    }
+
+    private void growFields() {
+        int n = fieldStart.length * 2;
+        fieldStart = Arrays.copyOf(fieldStart, n);
+        fieldEnd = Arrays.copyOf(fieldEnd, n);
+        fieldEscaped = Arrays.copyOf(fieldEscaped, n);
+    }
+
+    /** @return The number of fields of the current record. */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /** @return True if the current record only contains empty or blank fields. */
+    public boolean isBlankRecord() {
+        for (int f = 0; f < fieldCount; f++) {
+            if (!isBlank(f)) return false;
+        }
+        return true;
+    }
+
+    /** @return True if the field is missing from the current record or only contains blanks. */
+    public boolean isBlank(int field) {
+        if (field < 0 || field >= fieldCount) return true;
+        for (int i = fieldStart[field]; i < fieldEnd[field]; i++) {
+            if ((buffer.get(i) & 0xFF) > ' ') return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The text of a field ("" if the field is missing), decoded as UTF-8.
+     */
+    public String getString(int field) {
+        if (field < 0 || field >= fieldCount) return "";
+        int len = fieldEnd[field] - fieldStart[field];
+        if (len == 0) return "";
+        if (scratch.length < len) scratch = new byte[Math.max(len, scratch.length * 2)];
+        buffer.get(fieldStart[field], scratch, 0, len);
+        if (!fieldEscaped[field]) return new String(scratch, 0, len, StandardCharsets.UTF_8);
+        // remplace les "" par "
+        int w = 0;
+        for (int r = 0; r < len; r++) {
+            scratch[w++] = scratch[r];
+            if (scratch[r] == '"' && r + 1 < len && scratch[r + 1] == '"') r++;
+        }
+        return new String(scratch, 0, w, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return True if the field has exactly the given UTF-8 bytes. Allows reusing a String
+     *         already created for the same value without decoding the field again.
+     */
+    public boolean fieldEquals(int field, byte[] value) {
+        if (value == null || field < 0 || field >= fieldCount || fieldEscaped[field]) return false;
+        int start = fieldStart[field];
+        int len = fieldEnd[field] - start;
+        if (len != value.length) return false;
+        for (int i = 0; i < len; i++) {
+            if (buffer.get(start + i) != value[i]) return false;
+        }
+        return true;
+    }
+
+    /** @return A copy of the raw bytes of a field. */
+    public byte[] getBytes(int field) {
+        if (field < 0 || field >= fieldCount) return new byte[0];
+        byte[] bytes = new byte[fieldEnd[field] - fieldStart[field]];
+        buffer.get(fieldStart[field], bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * Parses an integer field directly from the bytes.
+     *
+     * @return The value, or defaultValue if the field is empty or not an integer.
+     */
+    public int getInt(int field, int defaultValue) {
+        if (field < 0 || field >= fieldCount) return defaultValue;
+        int i = fieldStart[field];
+        int e = fieldEnd[field];
+        while (i < e && (buffer.get(i) & 0xFF) <= ' ') i++;
+        while (e > i && (buffer.get(e - 1) & 0xFF) <= ' ') e--;
+        if (i == e) return defaultValue;
+        boolean negative = false;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == e) return defaultValue;
+        }
+        long value = 0;
+        for (; i < e; i++) {
+            int d = buffer.get(i) - '0';
+            if (d < 0 || d > 9) return defaultValue;
+            value = value * 10 + d;
+            if (value > Integer.MAX_VALUE) return defaultValue;
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Parses a GTFS time field ("H:MM:SS" or "HH:MM:SS", hours may exceed 24) directly from the bytes.
+     *
+     * @return The number of seconds since the start of the service day, or NO_TIME.
+     */
+    public int getTime(int field) {
+        if (field < 0 || field >= fieldCount) return NO_TIME;
+        int i = fieldStart[field];
+        int e = fieldEnd[field];
+        while (i < e && (buffer.get(i) & 0xFF) <= ' ') i++;
+        while (e > i && (buffer.get(e - 1) & 0xFF) <= ' ') e--;
+        int total = 0, part = 0, digits = 0, colons = 0;
+        for (; i < e; i++) {
+            byte c = buffer.get(i);
+            if (c >= '0' && c <= '9') {
+                part = part * 10 + (c - '0');
+                digits++;
+            } else if (c == ':' && digits > 0 && colons < 2) {
+                total = total * 60 + part;
+                part = 0;
+                digits = 0;
+                colons++;
+            } else {
+                return NO_TIME;
+            }
+        }
+        if (colons != 2 || digits == 0) return NO_TIME;
+        return total * 60 + part;
+    }
+
+    /**
+     * Parses a decimal field. Plain decimals ("43.6047", "-1.5") are parsed from the bytes;
+     * other notations fall back to Double.parseDouble.
+     *
+     * @return The value, or defaultValue if the field is empty or not a number.
+     */
+    public double getDouble(int field, double defaultValue) {
+        if (field < 0 || field >= fieldCount) return defaultValue;
+        int i = fieldStart[field];
+        int e = fieldEnd[field];
+        while (i < e && (buffer.get(i) & 0xFF) <= ' ') i++;
+        while (e > i && (buffer.get(e - 1) & 0xFF) <= ' ') e--;
+        if (i == e) return defaultValue;
+        int start = i;
+        boolean negative = false;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = 0;
+        boolean dot = false;
+        for (; i < e; i++) {
+            byte c = buffer.get(i);
+            if (c >= '0' && c <= '9') {
+                if (digits >= 17) return parseDoubleSlow(start, e, defaultValue);
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (dot) decimals++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                return parseDoubleSlow(start, e, defaultValue);
+            }
+        }
+        if (digits == 0) return defaultValue;
+        double value = decimals < POWERS_OF_TEN.length ? mantissa / POWERS_OF_TEN[decimals] : mantissa / Math.pow(10, decimals);
+        return negative ? -value : value;
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private double parseDoubleSlow(int start, int end, double defaultValue) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes, 0, bytes.length);
+        try {
+            return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package GamaGTFSUtils;
+
+/**
+ * Douglas-Peucker simplification of polylines stored as packed EPSG:4326 coordinates (lon0, lat0, lon1, lat1...).
+ * Distances are measured in metres on a local equirectangular projection centred on the polyline, which is
+ * accurate at the scale of a transit shape, so the tolerance does not depend on the CRS of the simulation.
+ * The kept vertices are original vertices: the first and last ones are always kept.
+ */
+public class PolylineSimplifier {
+
+    /** Length of one degree of latitude (and of longitude at the equator), in metres. */
+    private static final double METERS_PER_DEGREE = 2 * Math.PI * 6378137.0 / 360.0;
+
+    /**
+     * @param lonLat          - Packed coordinates: lon0, lat0, lon1, lat1...
+     * @param toleranceMeters - Largest distance between the polyline and its simplification, in metres.
+     * @return The packed coordinates of the kept vertices (lonLat itself when nothing is removed).
+     */
+    public static double[] simplify(double[] lonLat, double toleranceMeters) {
+        int n = lonLat.length / 2;
+        if (n <= 2 || !(toleranceMeters > 0)) return lonLat;
+
+        // coordonnées locales en mètres
+        double meanLat = 0;
+        for (int i = 0; i < n; i++) meanLat += lonLat[2 * i + 1];
+        double cosLat = Math.cos(Math.toRadians(meanLat / n));
+        double[] x = new double[n], y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = lonLat[2 * i] * METERS_PER_DEGREE * cosLat;
+            y[i] = lonLat[2 * i + 1] * METERS_PER_DEGREE;
+        }
+
+        boolean[] kept = new boolean[n];
+        kept[0] = kept[n - 1] = true;
+        int nbKept = 2;
+        double tolerance2 = toleranceMeters * toleranceMeters;
+        int[] stack = new int[2 * n]; // plages [first, last] restant à traiter
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        while (top > 0) {
+            int last = stack[--top], first = stack[--top];
+            int farthest = -1;
+            double max = tolerance2;
+            for (int i = first + 1; i < last; i++) {
+                double d = squaredDistanceToSegment(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (d > max) { max = d; farthest = i; }
+            }
+            if (farthest < 0) continue;
+            kept[farthest] = true;
+            nbKept++;
+            stack[top++] = first;
+            stack[top++] = farthest;
+            stack[top++] = farthest;
+            stack[top++] = last;
+        }
+        if (nbKept == n) return lonLat;
+
+        double[] simplified = new double[2 * nbKept];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (!kept[i]) continue;
+            simplified[k++] = lonLat[2 * i];
+            simplified[k++] = lonLat[2 * i + 1];
+        }
+        return simplified;
+    }
+
+    private static double squaredDistanceToSegment(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        double length2 = dx * dx + dy * dy;
+        double t = length2 == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / length2));
+        double ex = ax + t * dx - px, ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+}
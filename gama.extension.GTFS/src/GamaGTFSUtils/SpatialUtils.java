@@ -1,12 +1,20 @@
 package GamaGTFSUtils;
 
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
 import gama.core.metamodel.shape.GamaPoint;
+import gama.core.metamodel.shape.GamaShape;
 import gama.core.metamodel.shape.IShape;
 import gama.core.runtime.IScope;
 import gama.gaml.operators.spatial.SpatialProjections;
 
 public class SpatialUtils {
 
+    /** Number of points projected by one call of to_GAMA_CRS in toGamaCRS(scope, lonLat). */
+    private static final int CHUNK_SIZE = 20000;
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
     /**
      * Converts latitude and longitude to GAMA CRS.
      *
@@ -17,7 +25,7 @@ public class SpatialUtils {
      */
     public static GamaPoint toGamaCRS(IScope scope, double lat, double lon) {
         // Create a GamaPoint for the original location
-        GamaPoint rawLocation = new GamaPoint(lon, lat, 0.0); // Longitude (X), Latitude (Y), Altitude (Z)  
+        GamaPoint rawLocation = new GamaPoint(lon, lat, 0.0); // Longitude (X), Latitude (Y), Altitude (Z)
 
         // Transform the point to the GAMA CRS using "to_GAMA_CRS"
         IShape transformedShape = SpatialProjections.to_GAMA_CRS(scope, rawLocation, "EPSG:4326");
@@ -25,4 +33,40 @@ public class SpatialUtils {
         // Return the location as a GamaPoint
         return (GamaPoint) transformedShape.getLocation();
     }
-}
\ No newline at end of file
+
+    /**
+     * Converts many EPSG:4326 coordinates to GAMA CRS at once. The coordinates are projected by chunks of
+     * CHUNK_SIZE points, each chunk as one MultiPoint through to_GAMA_CRS: the projection is resolved once
+     * per chunk instead of once per point. The chunks are projected one after the other on the calling
+     * thread, as the scope of the simulation is not meant to be shared between threads.
+     *
+     * @param scope   - The GAMA simulation scope.
+     * @param lonLat  - Packed coordinates: lon0, lat0, lon1, lat1...
+     * @return The packed projected coordinates: x0, y0, x1, y1...
+     */
+    public static double[] toGamaCRS(IScope scope, double[] lonLat) {
+        int n = lonLat.length / 2;
+        double[] xy = new double[2 * n];
+        for (int from = 0; from < n; from += CHUNK_SIZE) projectChunk(scope, lonLat, from, Math.min(n, from + CHUNK_SIZE), xy);
+        return xy;
+    }
+
+    /** Projects the points [from, to) of lonLat into xy, as one MultiPoint. */
+    private static void projectChunk(IScope scope, double[] lonLat, int from, int to, double[] xy) {
+        Coordinate[] coords = new Coordinate[to - from];
+        for (int i = from; i < to; i++) coords[i - from] = new Coordinate(lonLat[2 * i], lonLat[2 * i + 1], 0.0);
+        IShape projected = SpatialProjections.to_GAMA_CRS(scope, new GamaShape(GEOMETRY_FACTORY.createMultiPointFromCoords(coords)), "EPSG:4326");
+        Coordinate[] result = projected != null && projected.getInnerGeometry() != null ? projected.getInnerGeometry().getCoordinates() : null;
+        for (int i = from; i < to; i++) {
+            if (result != null && result.length == coords.length) {
+                xy[2 * i] = result[i - from].x;
+                xy[2 * i + 1] = result[i - from].y;
+            } else {
+                // géométrie modifiée par la projection : point par point
+                GamaPoint p = toGamaCRS(scope, lonLat[2 * i + 1], lonLat[2 * i]);
+                xy[2 * i] = p.getX();
+                xy[2 * i + 1] = p.getY();
+            }
+        }
+    }
+}
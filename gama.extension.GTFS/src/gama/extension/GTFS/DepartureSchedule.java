@@ -0,0 +1,113 @@
+package gama.extension.GTFS;
+
+import java.util.Arrays;
+
+/**
+ * Departures of the current service day sorted by time, for all the stops of a feed.
+ *
+ * Each entry is a (departure time, trip, origin stop) triple, stored in three parallel int arrays
+ * sorted by time (then by origin stop). The departures of an interval of time are found by binary search,
+ * in O(log n + k), instead of every stop agent scanning its own departures at each step.
+ * Times are in seconds since the start of the service day (they may exceed 24h).
+ */
+public class DepartureSchedule {
+
+    private static final int DAY = 86400;
+
+    private final int[] times;
+    private final int[] trips;
+    private final int[] stops;
+
+    /**
+     * @param departuresOfStop For each stop index, the trips leaving from it (see GTFS_reader.selectDepartures).
+     * @param stopTimes        The compiled timetable.
+     */
+    DepartureSchedule(int[][] departuresOfStop, StopTimesTable stopTimes) {
+        int n = 0;
+        for (int[] departures : departuresOfStop) n += departures.length;
+        int[] tripOf = new int[n];
+        int[] stopOf = new int[n];
+        long[] keys = new long[n];
+        int k = 0;
+        for (int s = 0; s < departuresOfStop.length; s++) {
+            for (int t : departuresOfStop[s]) {
+                tripOf[k] = t;
+                stopOf[k] = s;
+                long departure = Math.max(0, stopTimes.getDepartureTime(stopTimes.getFirstRow(t)));
+                keys[k] = (departure << 32) | k;
+                k++;
+            }
+        }
+        Arrays.sort(keys);
+        times = new int[n];
+        trips = new int[n];
+        stops = new int[n];
+        for (int i = 0; i < n; i++) {
+            int from = (int) keys[i];
+            times[i] = (int) (keys[i] >>> 32);
+            trips[i] = tripOf[from];
+            stops[i] = stopOf[from];
+        }
+    }
+
+    /** @return The number of departures. */
+    public int size() {
+        return times.length;
+    }
+
+    /** @return The departure time (seconds) of the i-th departure. */
+    public int getTime(int i) {
+        return times[i];
+    }
+
+    /** @return The trip index (trip dictionary of the reader) of the i-th departure. */
+    public int getTripIndex(int i) {
+        return trips[i];
+    }
+
+    /** @return The origin stop index (stop dictionary of the reader) of the i-th departure. */
+    public int getStopIndex(int i) {
+        return stops[i];
+    }
+
+    /** @return The index of the first departure strictly after the time (size() if none). */
+    public int firstAfter(int time) {
+        int lo = 0, hi = times.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] <= time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return The indices of the departures in (from, to], sorted by time. The schedule is taken as
+     *         repeating every day, so the departures after 24:00:00 (trips of the previous service day) are
+     *         also given at their time minus 24h: those of (from + 24h, to + 24h] come first. When to < from
+     *         the interval crosses midnight: the departures of (from, to + 24h] come first, then those of
+     *         [0, to]. Calling it with consecutive intervals gives every departure once.
+     */
+    public int[] between(int from, int to) {
+        if (to >= from) {
+            int[] lateDepartures = range(firstAfter(from + DAY), firstAfter(to + DAY), null, 0);
+            return range(firstAfter(from), firstAfter(to), lateDepartures, lateDepartures.length);
+        }
+        int[] lateDepartures = range(firstAfter(from), firstAfter(to + DAY), null, 0);
+        return range(0, firstAfter(to), lateDepartures, lateDepartures.length);
+    }
+
+    private static int[] range(int start, int end, int[] prefix, int prefixLength) {
+        int[] indices = new int[prefixLength + Math.max(0, end - start)];
+        if (prefix != null) System.arraycopy(prefix, 0, indices, 0, prefixLength);
+        for (int i = start; i < end; i++) indices[prefixLength + i - start] = i;
+        return indices;
+    }
+
+    @Override
+    public String toString() {
+        return "DepartureSchedule{departures=" + times.length
+                + (times.length > 0 ? ", from=" + StopTimesTable.formatTime(times[0]) + ", to=" + StopTimesTable.formatTime(times[times.length - 1]) : "")
+                + "}";
+    }
+}
@@ -0,0 +1,97 @@
+package gama.extension.GTFS;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Column projection of the GTFS files: the columns GTFS_reader keeps in memory for each file.
+ *
+ * Only the columns read while creating the transport objects and computing the departures are kept;
+ * the other ones (stop_desc, trip_headsign, wheelchair_accessible, pickup/drop_off types...) are
+ * skipped while tokenizing. Files without an entry here are kept with all their columns.
+ * More columns can be requested with GTFSLoadOptions.addExtraColumn or from GAML.
+ */
+public class GTFSColumns {
+
+    /** Extra column name meaning "keep every column of the file". */
+    public static final String ALL_COLUMNS = "*";
+
+    private static final Map<String, Set<String>> REQUIRED = new HashMap<>();
+
+    static {
+        REQUIRED.put("routes.txt", Set.of("route_id", "route_type"));
+        REQUIRED.put("trips.txt", Set.of("route_id", "service_id", "trip_id", "shape_id", "block_id"));
+        REQUIRED.put("stops.txt", Set.of("stop_id", "stop_name", "stop_lat", "stop_lon"));
+        REQUIRED.put("stop_times.txt", Set.of("trip_id", "stop_id", "stop_sequence", "arrival_time",
+                "departure_time", "shape_dist_traveled"));
+        REQUIRED.put("shapes.txt", Set.of("shape_id", "shape_pt_lat", "shape_pt_lon", "shape_pt_sequence"));
+        REQUIRED.put("calendar.txt", Set.of("service_id", "monday", "tuesday", "wednesday", "thursday",
+                "friday", "saturday", "sunday", "start_date", "end_date"));
+        REQUIRED.put("calendar_dates.txt", Set.of("service_id", "date", "exception_type"));
+    }
+
+    /**
+     * @return The kept columns of every file, sorted: part of the feed cache signature, so a cache
+     *         written before a change of these columns is not reused.
+     */
+    public static String signature() {
+        Map<String, Set<String>> sorted = new TreeMap<>();
+        for (Map.Entry<String, Set<String>> e : REQUIRED.entrySet()) sorted.put(e.getKey(), new TreeSet<>(e.getValue()));
+        return sorted.toString();
+    }
+
+    /**
+     * @param fileName The GTFS file name (e.g. "stops.txt").
+     * @param extra    Extra columns asked by the user for this file (may be null).
+     * @return The columns to keep, or null to keep every column of the file.
+     */
+    public static Set<String> keptColumns(String fileName, Set<String> extra) {
+        Set<String> required = REQUIRED.get(fileName);
+        if (required == null) return null;
+        if (extra == null || extra.isEmpty()) return required;
+        if (extra.contains(ALL_COLUMNS)) return null;
+        Set<String> kept = new HashSet<>(required);
+        kept.addAll(extra);
+        return kept;
+    }
+
+    /**
+     * Restricts a header map (column name → index in the file) to the kept columns and renumbers
+     * them 0..k-1, in file order.
+     *
+     * @return The index in the file of each kept column, or null if no column is dropped
+     *         (the header map is then left untouched).
+     */
+    public static int[] project(Map<String, Integer> headerMap, Set<String> kept) {
+        if (kept == null) return null;
+        List<Map.Entry<String, Integer>> columns = new ArrayList<>();
+        int nbColumns = 0;
+        for (Map.Entry<String, Integer> entry : headerMap.entrySet()) {
+            nbColumns = Math.max(nbColumns, entry.getValue() + 1);
+            if (kept.contains(entry.getKey())) columns.add(entry);
+        }
+        if (columns.size() == nbColumns) return null;
+        columns.sort(Map.Entry.comparingByValue());
+        int[] sourceIndex = new int[columns.size()];
+        Map<String, Integer> projected = new HashMap<>();
+        for (int i = 0; i < sourceIndex.length; i++) {
+            sourceIndex[i] = columns.get(i).getValue();
+            projected.put(columns.get(i).getKey(), i);
+        }
+        headerMap.clear();
+        headerMap.putAll(projected);
+        return sourceIndex;
+    }
+
+    /** Normalises a file name given by the user: "stops" or "Stops.txt" → "stops.txt". */
+    static String normalizeFileName(String fileName) {
+        String name = fileName.trim().toLowerCase();
+        return name.endsWith(".txt") ? name : name + ".txt";
+    }
+}
@@ -0,0 +1,342 @@
+package gama.extension.GTFS;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary cache of the parsed GTFS files, so that a feed is not tokenized again each time a model opens.
+ *
+ * The cache holds, for every file loaded at startup, its separator, its (projected) header and either
+ * its rows (each file has its own string dictionary) or the columns and trip patterns of the compiled
+ * StopTimesTable. It is keyed by the size, modification time and CRC32C of each source file, and by
+ * the load options that change the parsed data. When a file has a new modification time but the same size, its content
+ * hash is computed to decide whether the cache is still valid. The cache is read through a memory-mapped
+ * buffer. A mapping stays alive until the buffer is garbage collected, and a mapped file cannot be
+ * replaced on Windows, so a cache is never rewritten in place: each write creates a new generation of
+ * the file (name.bin.1, name.bin.2...) and deletes the older ones when they are no longer mapped.
+ * The transport objects (stops, trips, shapes, departures) are still built from this data, as they
+ * depend on the projection of the simulation.
+ */
+class GTFSFeedCache {
+
+    private static final int MAGIC = 0x47544643; // "GTFC"
+    private static final int VERSION = 3; // 2 : block_id et shape_pt_sequence conservés, 3 : heures en patterns
+    private static final byte KIND_ROWS = 0;
+    private static final byte KIND_STOP_TIMES = 1;
+    private static final byte KIND_EMPTY = 2;
+
+    /** CRC32C already known for a state of a file (path, size, modification time): read in a valid cache or computed. */
+    private static final Map<String, Long> KNOWN_HASHES = new ConcurrentHashMap<>();
+
+    /**
+     * @return The cache of a feed directory, named after the feed path in the cache directory of the
+     *         options (the files read and written are its generations).
+     */
+    static File cacheFileFor(File feedDirectory, GTFSLoadOptions options) {
+        String path = feedDirectory.getAbsolutePath();
+        return new File(options.getCacheDirectory(), feedDirectory.getName() + "-" + Integer.toHexString(path.hashCode()) + ".bin");
+    }
+
+    /**
+     * Reads the last generation of the cache if it was written for the same source files and options.
+     *
+     * @return The parsed files in the order they were written, or null if the cache is missing or stale.
+     */
+    static List<ParsedGtfsFile> read(File cacheFile, List<File> sources, String signature) {
+        List<File> generations = generations(cacheFile);
+        if (generations.isEmpty()) return null;
+        File file = generations.get(generations.size() - 1);
+        try {
+            MappedByteBuffer buf;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+            if (!signature.equals(readString(buf))) {
+                System.out.println("[INFO] Cache GTFS ignoré : options de chargement différentes");
+                return null;
+            }
+            // 1. Vérifie les fichiers sources
+            int nbSources = buf.getInt();
+            if (nbSources != sources.size()) return null;
+            boolean touched = false;
+            for (File source : sources) {
+                String name = readString(buf);
+                long size = buf.getLong();
+                long mtime = buf.getLong();
+                long hash = buf.getLong();
+                if (!name.equals(source.getName()) || size != source.length()) return null;
+                if (mtime == source.lastModified()) {
+                    KNOWN_HASHES.put(stateOf(source), hash); // réutilisé si le cache est réécrit
+                } else {
+                    // date modifiée : on compare le contenu
+                    if (hash != hash(source)) return null;
+                    touched = true;
+                }
+            }
+            // 2. Relit les fichiers
+            int nbFiles = buf.getInt();
+            List<ParsedGtfsFile> parsedFiles = new ArrayList<>(nbFiles);
+            for (int f = 0; f < nbFiles; f++) {
+                ParsedGtfsFile parsed = new ParsedGtfsFile();
+                parsed.name = readString(buf);
+                parsed.separator = buf.getChar();
+                int nbColumns = buf.getInt();
+                for (int c = 0; c < nbColumns; c++) {
+                    String column = readString(buf);
+                    parsed.headerMap.put(column, buf.getInt());
+                }
+                byte kind = buf.get();
+                if (kind == KIND_ROWS) {
+                    parsed.rows = readRows(buf);
+                } else if (kind == KIND_STOP_TIMES) {
+                    parsed.stopTimes = readStopTimes(buf);
+                }
+                parsedFiles.add(parsed);
+            }
+            System.out.println("[INFO] Fichiers GTFS relus depuis le cache " + file);
+            if (touched) write(cacheFile, sources, signature, parsedFiles); // met à jour les dates (nouvelle génération)
+            return parsedFiles;
+        } catch (Exception e) {
+            System.err.println("[WARNING] Cache GTFS illisible, les fichiers sont relus : " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes a new generation of the cache, then deletes the older ones (those still mapped are left to a
+     * later write). Failures (e.g. read-only cache directory) are reported and ignored.
+     */
+    static void write(File cacheFile, List<File> sources, String signature, List<ParsedGtfsFile> parsedFiles) {
+        File dir = cacheFile.getParentFile();
+        File tmp = null;
+        try {
+            List<File> previous = generations(cacheFile);
+            long generation = previous.isEmpty() ? 1 : generationOf(cacheFile, previous.get(previous.size() - 1)) + 1;
+            File target = new File(dir, cacheFile.getName() + "." + generation);
+            if (dir != null) Files.createDirectories(dir.toPath());
+            tmp = File.createTempFile("feed", ".tmp", dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, signature);
+                out.writeInt(sources.size());
+                for (File source : sources) {
+                    writeString(out, source.getName());
+                    out.writeLong(source.length());
+                    out.writeLong(source.lastModified());
+                    out.writeLong(hash(source));
+                }
+                out.writeInt(parsedFiles.size());
+                for (ParsedGtfsFile parsed : parsedFiles) {
+                    writeString(out, parsed.name);
+                    out.writeChar(parsed.separator);
+                    out.writeInt(parsed.headerMap.size());
+                    for (Map.Entry<String, Integer> column : parsed.headerMap.entrySet()) {
+                        writeString(out, column.getKey());
+                        out.writeInt(column.getValue());
+                    }
+                    if (parsed.stopTimes != null) {
+                        out.writeByte(KIND_STOP_TIMES);
+                        writeStopTimes(out, parsed.stopTimes);
+                    } else if (parsed.rows != null) {
+                        out.writeByte(KIND_ROWS);
+                        writeRows(out, parsed.rows);
+                    } else {
+                        out.writeByte(KIND_EMPTY);
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            for (File old : previous) old.delete(); // échoue tant qu'un ancien cache est mappé : supprimé plus tard
+            System.out.println("[INFO] Cache GTFS écrit : " + target + " (" + target.length() / 1024 + " Ko)");
+        } catch (IOException e) {
+            System.err.println("[WARNING] Impossible d'écrire le cache GTFS " + cacheFile + " : " + e.getMessage());
+            if (tmp != null) tmp.delete();
+        }
+    }
+
+    /** CRC32C of the content of a file, computed once per state of the file (see KNOWN_HASHES). */
+    static long hash(File file) throws IOException {
+        String state = stateOf(file);
+        Long known = KNOWN_HASHES.get(state);
+        if (known != null) return known;
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) crc.update(buffer, 0, n);
+        }
+        KNOWN_HASHES.put(state, crc.getValue());
+        return crc.getValue();
+    }
+
+    private static String stateOf(File file) {
+        return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+    }
+
+    /** @return The generations of a cache (files name.bin.N), oldest first. */
+    private static List<File> generations(File cacheFile) {
+        List<File> generations = new ArrayList<>();
+        File[] files = cacheFile.getParentFile() == null ? null : cacheFile.getParentFile().listFiles();
+        if (files == null) return generations;
+        for (File file : files) {
+            if (file.isFile() && generationOf(cacheFile, file) > 0) generations.add(file);
+        }
+        generations.sort((a, b) -> Long.compare(generationOf(cacheFile, a), generationOf(cacheFile, b)));
+        return generations;
+    }
+
+    /** @return The generation N of a file name.bin.N of the cache, or -1 for another file. */
+    private static long generationOf(File cacheFile, File file) {
+        String prefix = cacheFile.getName() + ".";
+        String name = file.getName();
+        if (!name.startsWith(prefix)) return -1;
+        try {
+            return Long.parseLong(name.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // --- Lignes : dictionnaire de chaînes propre au fichier, puis indices
+
+    private static void writeRows(DataOutputStream out, List<String[]> rows) throws IOException {
+        Map<String, Integer> indexByValue = new HashMap<>();
+        List<String> values = new ArrayList<>();
+        int[][] encoded = new int[rows.size()][];
+        for (int r = 0; r < rows.size(); r++) {
+            String[] row = rows.get(r);
+            int[] cells = new int[row.length];
+            for (int c = 0; c < row.length; c++) {
+                String value = row[c] == null ? "" : row[c];
+                Integer idx = indexByValue.get(value);
+                if (idx == null) {
+                    idx = values.size();
+                    values.add(value);
+                    indexByValue.put(value, idx);
+                }
+                cells[c] = idx;
+            }
+            encoded[r] = cells;
+        }
+        out.writeInt(values.size());
+        for (String value : values) writeString(out, value);
+        out.writeInt(encoded.length);
+        for (int[] cells : encoded) {
+            out.writeInt(cells.length);
+            for (int cell : cells) out.writeInt(cell);
+        }
+    }
+
+    private static List<String[]> readRows(ByteBuffer buf) {
+        String[] values = new String[buf.getInt()];
+        for (int i = 0; i < values.length; i++) values[i] = readString(buf);
+        int nbRows = buf.getInt();
+        List<String[]> rows = new ArrayList<>(nbRows);
+        int[] cells = new int[16];
+        for (int r = 0; r < nbRows; r++) {
+            int length = buf.getInt();
+            if (cells.length < length) cells = new int[length];
+            buf.asIntBuffer().get(cells, 0, length);
+            buf.position(buf.position() + 4 * length);
+            String[] row = new String[length];
+            for (int c = 0; c < length; c++) row[c] = values[cells[c]];
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // --- stop_times.txt : colonnes de la table compilée
+
+    private static void writeStopTimes(DataOutputStream out, StopTimesTable table) throws IOException {
+        int size = table.size();
+        out.writeInt(table.getTripCount());
+        for (int t = 0; t < table.getTripCount(); t++) writeString(out, table.getTripId(t));
+        out.writeInt(table.getStopCount());
+        for (int s = 0; s < table.getStopCount(); s++) writeString(out, table.getStopIdAt(s));
+        for (int t = 0; t <= table.getTripCount(); t++) out.writeInt(t < table.getTripCount() ? table.getTripStart(t) : size);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) out.writeInt(table.getTripIndex(i));
+        for (int i = 0; i < size; i++) out.writeInt(table.getStopIndex(i));
+        for (int i = 0; i < size; i++) out.writeInt(table.getStopSequence(i));
+        for (int i = 0; i < size; i++) out.writeFloat(table.getShapeDistTraveled(i));
+        // heures : patterns, puis départ et vecteur de décalages de chaque trip
+        TripPatterns patterns = table.getTripPatterns();
+        out.writeInt(patterns.getPatternCount());
+        for (int p = 0; p < patterns.getPatternCount(); p++) writeInts(out, patterns.getStops(p));
+        for (int t = 0; t < table.getTripCount(); t++) out.writeInt(patterns.getPatternOf(t));
+        for (int t = 0; t < table.getTripCount(); t++) out.writeInt(patterns.getStartTime(t));
+        for (int t = 0; t < table.getTripCount(); t++) out.writeInt(patterns.getOffsetVectorOf(t));
+        out.writeInt(patterns.getOffsetVectorCount());
+        for (int v = 0; v < patterns.getOffsetVectorCount(); v++) writeInts(out, patterns.getOffsetVector(v));
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) out.writeInt(value);
+    }
+
+    private static StopTimesTable readStopTimes(ByteBuffer buf) {
+        String[] tripIds = new String[buf.getInt()];
+        for (int t = 0; t < tripIds.length; t++) tripIds[t] = readString(buf);
+        String[] stopIds = new String[buf.getInt()];
+        for (int s = 0; s < stopIds.length; s++) stopIds[s] = readString(buf);
+        int[] tripStart = readInts(buf, tripIds.length + 1);
+        int size = buf.getInt();
+        int[] tripIndex = readInts(buf, size);
+        int[] stopIndex = readInts(buf, size);
+        int[] stopSequence = readInts(buf, size);
+        float[] shapeDist = new float[size];
+        buf.asFloatBuffer().get(shapeDist);
+        buf.position(buf.position() + 4 * size);
+        int[][] stopsOfPattern = new int[buf.getInt()][];
+        for (int p = 0; p < stopsOfPattern.length; p++) stopsOfPattern[p] = readInts(buf, buf.getInt());
+        int[] patternOfTrip = readInts(buf, tripIds.length);
+        int[] startOfTrip = readInts(buf, tripIds.length);
+        int[] offsetsOfTrip = readInts(buf, tripIds.length);
+        int[][] offsetVectors = new int[buf.getInt()][];
+        for (int v = 0; v < offsetVectors.length; v++) offsetVectors[v] = readInts(buf, buf.getInt());
+        TripPatterns patterns = new TripPatterns(stopsOfPattern, patternOfTrip, startOfTrip, offsetsOfTrip, offsetVectors);
+        return new StopTimesTable(tripIndex, stopIndex, stopSequence, shapeDist, tripIds, stopIds, tripStart, patterns);
+    }
+
+    private static int[] readInts(ByteBuffer buf, int n) {
+        int[] values = new int[n];
+        buf.asIntBuffer().get(values);
+        buf.position(buf.position() + 4 * n);
+        return values;
+    }
+
+    // --- Chaînes : longueur + octets UTF-8
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,242 @@
+package gama.extension.GTFS;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Options controlling how GTFS_reader loads a feed.
+ *
+ * Defaults can be changed for a whole GAMA instance with JVM system properties
+ * (e.g. -Dgtfs.parallel_loading=true in Gama.ini or on the headless command line),
+ * which is the usual way to tune batch runs without touching the models.
+ */
+public class GTFSLoadOptions {
+
+    /** CSV tokenizer used to read the GTFS text files. */
+    public enum Tokenizer {
+        /** OpenCSV reader (historical path). */
+        OPENCSV,
+        /** Memory-mapped tokenizer parsing numbers and times straight from the bytes. */
+        MAPPED
+    }
+
+    private boolean parallelLoading = Boolean.getBoolean("gtfs.parallel_loading");
+    private int loaderThreads = Integer.getInteger("gtfs.loader_threads", Runtime.getRuntime().availableProcessors());
+    private boolean parallelShapes = !"false".equalsIgnoreCase(System.getProperty("gtfs.parallel_shapes"));
+    private boolean chunkedParsing = !"false".equalsIgnoreCase(System.getProperty("gtfs.chunked_parsing"));
+    private long chunkThresholdBytes = Long.getLong("gtfs.chunk_threshold_mb", 32L) * 1024 * 1024;
+    private int chunkThreads = Integer.getInteger("gtfs.chunk_threads", Runtime.getRuntime().availableProcessors());
+    private boolean columnProjection = !"false".equalsIgnoreCase(System.getProperty("gtfs.column_projection"));
+    private final Map<String, Set<String>> extraColumns = new HashMap<>();
+    private boolean feedCache = !"false".equalsIgnoreCase(System.getProperty("gtfs.feed_cache"));
+    private File cacheDirectory = System.getProperty("gtfs.cache_dir") == null ? defaultCacheDirectory() : new File(System.getProperty("gtfs.cache_dir"));
+    private double shapeTolerance = doubleProperty("gtfs.shape_tolerance", 0.0);
+    private Tokenizer tokenizer = "mapped".equalsIgnoreCase(System.getProperty("gtfs.tokenizer")) ? Tokenizer.MAPPED : Tokenizer.OPENCSV;
+
+    /** @return A new set of options initialised from the system properties. */
+    public static GTFSLoadOptions defaults() {
+        return new GTFSLoadOptions();
+    }
+
+    /** Parse the GTFS text files concurrently instead of one after the other (off by default). */
+    public boolean isParallelLoading() {
+        return parallelLoading;
+    }
+
+    public GTFSLoadOptions setParallelLoading(boolean parallelLoading) {
+        this.parallelLoading = parallelLoading;
+        return this;
+    }
+
+    /** Upper bound on the number of threads used by the parallel loading mode and by the shapes. */
+    public int getLoaderThreads() {
+        return Math.max(1, loaderThreads);
+    }
+
+    public GTFSLoadOptions setLoaderThreads(int loaderThreads) {
+        this.loaderThreads = loaderThreads;
+        return this;
+    }
+
+    /**
+     * Sort (and simplify, see getShapeTolerance) the points of the shapes on several threads, whatever
+     * the parallel loading mode (on by default, -Dgtfs.parallel_shapes=false to disable).
+     */
+    public boolean isParallelShapes() {
+        return parallelShapes;
+    }
+
+    public GTFSLoadOptions setParallelShapes(boolean parallelShapes) {
+        this.parallelShapes = parallelShapes;
+        return this;
+    }
+
+    /** Split a large stop_times.txt into byte ranges parsed on several cores (on by default). */
+    public boolean isChunkedParsing() {
+        return chunkedParsing;
+    }
+
+    public GTFSLoadOptions setChunkedParsing(boolean chunkedParsing) {
+        this.chunkedParsing = chunkedParsing;
+        return this;
+    }
+
+    /** Size from which stop_times.txt is parsed in chunks. */
+    public long getChunkThresholdBytes() {
+        return chunkThresholdBytes;
+    }
+
+    public GTFSLoadOptions setChunkThresholdBytes(long chunkThresholdBytes) {
+        this.chunkThresholdBytes = chunkThresholdBytes;
+        return this;
+    }
+
+    /** Number of chunks (and threads) used to parse stop_times.txt. */
+    public int getChunkThreads() {
+        return Math.max(1, chunkThreads);
+    }
+
+    public GTFSLoadOptions setChunkThreads(int chunkThreads) {
+        this.chunkThreads = chunkThreads;
+        return this;
+    }
+
+    /** Tokenizer used to read the files (OPENCSV by default, MAPPED with -Dgtfs.tokenizer=mapped). */
+    public Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    public GTFSLoadOptions setTokenizer(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer == null ? Tokenizer.OPENCSV : tokenizer;
+        return this;
+    }
+
+    /** Keep only the columns used by the plugin (see GTFSColumns) plus the extra columns (on by default). */
+    public boolean isColumnProjection() {
+        return columnProjection;
+    }
+
+    public GTFSLoadOptions setColumnProjection(boolean columnProjection) {
+        this.columnProjection = columnProjection;
+        return this;
+    }
+
+    /**
+     * Keeps a column that the plugin does not use itself. GTFSColumns.ALL_COLUMNS ("*") keeps
+     * every column of the file.
+     */
+    public GTFSLoadOptions addExtraColumn(String fileName, String column) {
+        extraColumns.computeIfAbsent(GTFSColumns.normalizeFileName(fileName), k -> new HashSet<>())
+                .add(column.trim().toLowerCase());
+        return this;
+    }
+
+    /**
+     * Adds extra columns written as "file.txt:column" (e.g. "stops.txt:stop_desc"),
+     * or "file.txt" alone to keep every column of the file.
+     */
+    public GTFSLoadOptions addExtraColumns(Collection<String> specs) {
+        if (specs == null) return this;
+        for (String spec : specs) {
+            if (spec == null || spec.isBlank()) continue;
+            int colon = spec.indexOf(':');
+            if (colon < 0) {
+                addExtraColumn(spec, GTFSColumns.ALL_COLUMNS);
+            } else {
+                addExtraColumn(spec.substring(0, colon), spec.substring(colon + 1));
+            }
+        }
+        return this;
+    }
+
+    /** @return The extra columns asked for a file (empty if none). */
+    public Set<String> getExtraColumns(String fileName) {
+        return extraColumns.getOrDefault(fileName, Set.of());
+    }
+
+    /**
+     * Keep a binary copy of the parsed files (see GTFSFeedCache) in the cache directory and reuse it
+     * while the source files are unchanged (on by default, -Dgtfs.feed_cache=false to disable).
+     */
+    public boolean isFeedCache() {
+        return feedCache;
+    }
+
+    public GTFSLoadOptions setFeedCache(boolean feedCache) {
+        this.feedCache = feedCache;
+        return this;
+    }
+
+    /**
+     * Directory holding the feed caches (-Dgtfs.cache_dir), by default .gtfs_cache in the home directory
+     * of the user. Nothing is written in the feed directories, which may be read-only or under version
+     * control.
+     */
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public GTFSLoadOptions setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory == null ? defaultCacheDirectory() : cacheDirectory;
+        return this;
+    }
+
+    private static File defaultCacheDirectory() {
+        return new File(System.getProperty("user.home"), ".gtfs_cache");
+    }
+
+    /**
+     * Tolerance (metres) of the Douglas-Peucker simplification of the shapes of shapes.txt at load
+     * (-Dgtfs.shape_tolerance); 0, the default, keeps every point. The shapes are simplified in the tasks
+     * that sort their points, so on several threads unless isParallelShapes is off.
+     */
+    public double getShapeTolerance() {
+        return shapeTolerance;
+    }
+
+    public GTFSLoadOptions setShapeTolerance(double shapeTolerance) {
+        this.shapeTolerance = shapeTolerance;
+        return this;
+    }
+
+    /**
+     * @return A description of the options that change the parsed data, including the columns kept
+     *         by GTFSColumns; a cache written with other options is not reused.
+     */
+    public String getCacheSignature() {
+        Map<String, Set<String>> sortedExtra = new TreeMap<>();
+        for (Map.Entry<String, Set<String>> e : extraColumns.entrySet()) {
+            sortedExtra.put(e.getKey(), new TreeSet<>(e.getValue()));
+        }
+        return "tokenizer=" + tokenizer + ";columnProjection=" + columnProjection
+                + (columnProjection ? ";columns=" + GTFSColumns.signature() : "") + ";extraColumns=" + sortedExtra;
+    }
+
+    @Override
+    public String toString() {
+        return "GTFSLoadOptions{parallelLoading=" + parallelLoading + ", loaderThreads=" + getLoaderThreads()
+                + ", parallelShapes=" + parallelShapes + ", chunkedParsing=" + chunkedParsing
+                + ", chunkThresholdBytes=" + chunkThresholdBytes
+                + ", chunkThreads=" + getChunkThreads() + ", tokenizer=" + tokenizer
+                + ", columnProjection=" + columnProjection + ", extraColumns=" + extraColumns
+                + ", feedCache=" + feedCache + ", cacheDirectory=" + cacheDirectory
+                + ", shapeTolerance=" + shapeTolerance + "}";
+    }
+
+    /** Like Integer.getInteger: the default value when the property is missing or not a number. */
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) return defaultValue;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -4,16 +4,25 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import gama.core.util.GamaPair;
 import gama.annotations.precompiler.GamlAnnotations.doc;
@@ -21,6 +30,7 @@ import gama.annotations.precompiler.GamlAnnotations.example;
 import gama.annotations.precompiler.GamlAnnotations.file;
 import gama.annotations.precompiler.IConcept;
 import gama.core.common.geometry.Envelope3D;
+import gama.core.metamodel.agent.IAgent;
 import gama.core.metamodel.shape.GamaPoint;
 import gama.core.runtime.IScope;
 import gama.core.runtime.exceptions.GamaRuntimeException;
@@ -31,6 +41,13 @@ import gama.core.util.IMap;
 import gama.core.util.file.GamaFile;
 import gama.gaml.types.IType;
 import gama.gaml.types.Types;
+import GamaGTFSUtils.CsvChunkSplitter;
+import GamaGTFSUtils.SpatialUtils;
+import GamaGTFSUtils.MappedCsvTokenizer;
+import GamaGTFSUtils.PolylineSimplifier;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.linearref.LengthIndexedLine;
 import com.opencsv.CSVParser;
 import com.opencsv.CSVParserBuilder;
 import com.opencsv.CSVReader;
@@ -57,8 +74,29 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
         "routes.txt", "trips.txt", "stop_times.txt", "stops.txt"
     };
 
+    // Files parsed when the reader is created (needed to build the transport objects)
+    private static final Set<String> EAGER_FILES = Set.of(
+        "routes.txt", "trips.txt", "stop_times.txt", "stops.txt", "shapes.txt", "calendar.txt"
+    );
+
+    // Optional GTFS files, parsed the first time they are asked for (getFileRows / getHeaderMap).
+    // Any other .txt file in the directory is never parsed.
+    private static final Set<String> OPTIONAL_FILES = Set.of(
+        "calendar_dates.txt", "frequencies.txt", "transfers.txt", "agency.txt", "feed_info.txt",
+        "fare_attributes.txt", "fare_rules.txt", "fare_media.txt", "fare_products.txt", "fare_leg_rules.txt",
+        "fare_transfer_rules.txt", "areas.txt", "stop_areas.txt", "networks.txt", "route_networks.txt",
+        "timeframes.txt", "pathways.txt", "levels.txt", "translations.txt", "attributions.txt",
+        "location_groups.txt", "location_group_stops.txt", "booking_rules.txt"
+    );
+
+    // Optional files found in the directory and not parsed yet
+    private final Map<String, File> lazyFiles = new HashMap<>();
+
     // Data structure to store GTFS files
     private IMap<String, List<String[]>> gtfsData;
+
+    // stop_times.txt compilé sous forme columnaire (les lignes String[] ne sont pas conservées)
+    private StopTimesTable stopTimes;
     
     // New field to store header mappings for each file
     @SuppressWarnings("unchecked")
@@ -75,7 +113,35 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
     private boolean shapesTxtPresent = false;
     public boolean isShapesTxtPresent() { return shapesTxtPresent; }
     private IMap<String, Integer> routeTypeMapGlobal;
+    // Sans shapes.txt : shapeId fictif → index (stop_times) du trip dont on reprend les arrêts
+    private Map<String, Integer> fakeShapeTrips = new LinkedHashMap<>();
+    private ServiceCalendar serviceCalendar;
+    // Journée de service courante : trips actifs et, par index de stop, trips au départ (triés par heure)
+    private LocalDate currentServiceDay;
+    private BitSet currentActiveTrips = new BitSet();
+    private int[][] departuresOfStop = new int[0][];
+    private final BitSet attachedTrips = new BitSet();
+    private DepartureSchedule departureSchedule;
+    private TripIntervalIndex tripIntervalIndex;
+    private StopPassageIndex stopPassageIndex;
+    // Index d'autres jours de service (veille pour les trips après minuit, ou jours demandés), du moins
+    // récemment utilisé au plus récent ; la veille du jour courant n'est jamais évincée
+    private static final int MAX_OTHER_DAY_INDEXES = 3;
+    private final LinkedHashMap<LocalDate, TripIntervalIndex> otherDayIndexes = new LinkedHashMap<>(8, 0.75f, true);
+    // Géométrie des shapes (repère GAMA) indexée par longueur, pour placer un véhicule en cours de trip
+    private final Map<String, LengthIndexedLine> shapeLines = new HashMap<>();
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+    // Trip suivant du même block_id (trips du block triés par heure de départ), -1 pour le dernier
+    private int[] nextTripOfBlock;
     private IScope initScope;
+    private GTFSLoadOptions loadOptions;
+
+    // Dictionnaires d'identifiants (id GTFS → indice dense) et objets rangés par indice.
+    // Les trips et les stops gardent les indices de la table stop_times.
+    private IdDictionary tripDictionary;
+    private IdDictionary stopDictionary;
+    private TransportTrip[] tripsByIndex;
+    private TransportStop[] stopsByIndex;
     
     /**
      * Constructor for reading GTFS files.
@@ -88,8 +154,58 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
             value = "This constructor allows loading GTFS files from a specified directory.",
             examples = { @example (value = "GTFS_reader gtfs <- GTFS_reader(scope, \"path_to_gtfs_directory\");")})
     public GTFS_reader(final IScope scope, final String pathName) throws GamaRuntimeException {
+        this(scope, pathName, GTFSLoadOptions.defaults());
+    }
+
+    /**
+     * Constructor for reading GTFS files, choosing whether the text files are parsed concurrently.
+     *
+     * @param scope           The simulation context in GAMA.
+     * @param pathName        The directory path containing GTFS files.
+     * @param parallelLoading If true, the files are parsed at the same time on a bounded thread pool.
+     * @throws GamaRuntimeException If an error occurs while loading the files.
+     */
+    @doc (
+            value = "This constructor loads GTFS files from a directory, parsing the files in parallel when the boolean is true. The result is identical to the sequential loading.",
+            examples = { @example (value = "gtfs_file gtfs_f <- gtfs_file(\"path_to_gtfs_directory\", true);", isExecutable = false)})
+    public GTFS_reader(final IScope scope, final String pathName, final boolean parallelLoading) throws GamaRuntimeException {
+        this(scope, pathName, GTFSLoadOptions.defaults().setParallelLoading(parallelLoading));
+    }
+
+    /**
+     * Constructor for reading GTFS files, keeping columns that the plugin does not use itself.
+     *
+     * @param scope        The simulation context in GAMA.
+     * @param pathName     The directory path containing GTFS files.
+     * @param extraColumns Columns to keep, as "file.txt:column", or "file.txt" to keep every column of a file.
+     * @throws GamaRuntimeException If an error occurs while loading the files.
+     */
+    @doc (
+            value = "This constructor loads GTFS files from a directory, keeping the listed extra columns in addition to the ones used by the plugin. Each entry is 'file.txt:column', or 'file.txt' to keep every column of the file.",
+            examples = { @example (value = "gtfs_file gtfs_f <- gtfs_file(\"path_to_gtfs_directory\", [\"stops.txt:stop_desc\", \"trips.txt:trip_headsign\"]);", isExecutable = false)})
+    public GTFS_reader(final IScope scope, final String pathName, final IList<String> extraColumns) throws GamaRuntimeException {
+        this(scope, pathName, GTFSLoadOptions.defaults().addExtraColumns(extraColumns));
+    }
+
+    /**
+     * Constructor for reading GTFS files, simplifying the shapes of shapes.txt.
+     *
+     * @param scope          The simulation context in GAMA.
+     * @param pathName       The directory path containing GTFS files.
+     * @param shapeTolerance Tolerance in metres of the Douglas-Peucker simplification of the shapes.
+     * @throws GamaRuntimeException If an error occurs while loading the files.
+     */
+    @doc (
+            value = "This constructor loads GTFS files from a directory, simplifying the shapes of shapes.txt with a Douglas-Peucker tolerance in metres: the transport_shape agents have fewer points, so they are cheaper to draw and to turn into graphs.",
+            examples = { @example (value = "gtfs_file gtfs_f <- gtfs_file(\"path_to_gtfs_directory\", 5.0);", isExecutable = false)})
+    public GTFS_reader(final IScope scope, final String pathName, final double shapeTolerance) throws GamaRuntimeException {
+        this(scope, pathName, GTFSLoadOptions.defaults().setShapeTolerance(shapeTolerance));
+    }
+
+    private GTFS_reader(final IScope scope, final String pathName, final GTFSLoadOptions options) throws GamaRuntimeException {
         super(scope, pathName);
         this.initScope = scope;
+        this.loadOptions = options;
         
         
         // Debug: Print the GTFS path in the GAMA console
@@ -114,6 +230,7 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
     public GTFS_reader(final String pathName) throws GamaRuntimeException {
         super(null, pathName);  // Pass 'null' for IScope as it is not needed here
         this.initScope = null;
+        this.loadOptions = GTFSLoadOptions.defaults();
         checkValidity(null);  // Pass 'null' if IScope is not necessary for this check
         loadGtfsFiles(null);
         createTransportObjects(null);
@@ -148,6 +265,12 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
         return new ArrayList<>(shapesMap.values());
     }
     
+    /** @return The shape with this shape_id (fake shapes are built if needed), or null. */
+    public TransportShape getShape(final IScope scope, final String shapeId) {
+        if (shapesMap.isEmpty()) getShapes(scope);
+        return shapeId == null ? null : shapesMap.get(shapeId);
+    }
+
     public List<TransportShape> getShapes(final IScope scopeForLazy) {
         if (!shapesMap.isEmpty()) return new ArrayList<>(shapesMap.values());
         if (!shapesTxtPresent) {
@@ -157,56 +280,30 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
     }
     
     
-    @SuppressWarnings("unchecked")
+    /**
+     * Builds one fake shape per distinct stop sequence (see createTripsWithoutShapes), following
+     * the stops of the first trip having that sequence.
+     */
     private void buildFakeShapesLazily(final IScope scope, final IMap<String, Integer> routeTypeMap) {
         System.out.println("[LAZY] Building fake shapes now (requested by create transport_shape)...");
-        for (TransportTrip trip : tripsMap.values()) {
-            String tripId = trip.getTripId();
-            String fakeShapeId = trip.getShapeId();
-            if (fakeShapeId == null || fakeShapeId.isEmpty()) {
-                fakeShapeId = "fake_" + tripId;
-                trip.setShapeId(fakeShapeId);
-            }
+        for (Map.Entry<String, Integer> entry : fakeShapeTrips.entrySet()) {
+            String fakeShapeId = entry.getKey();
             if (shapesMap.containsKey(fakeShapeId)) continue;
+            int t = entry.getValue();
+            String tripId = stopTimes.getTripId(t);
+            TransportTrip trip = tripsMap.get(tripId);
+            if (trip == null) continue;
 
-            List<GamaPoint> pts = new ArrayList<>();
-            List<String> orderedStops = trip.getStopsInOrder();
-            if (orderedStops == null || orderedStops.isEmpty()) {
-                List<String[]> stopTimesData = gtfsData.get("stop_times.txt");
-                IMap<String, Integer> stopTimesHeader = headerMaps.get("stop_times.txt");
-                Integer tripIdIdx = findColumnIndex(stopTimesHeader, "trip_id");
-                Integer stopIdIdx = findColumnIndex(stopTimesHeader, "stop_id");
-                Integer seqIdx    = findColumnIndex(stopTimesHeader, "stop_sequence");
-                if (stopTimesData != null && tripIdIdx != null && stopIdIdx != null && seqIdx != null) {
-                    List<String[]> lines = new ArrayList<>();
-                    for (String[] st : stopTimesData) {
-                        if (st != null && st.length > Math.max(tripIdIdx, Math.max(stopIdIdx, seqIdx))) {
-                            if (tripId.equals(st[tripIdIdx].trim().replace("\"","").replace("'",""))) {
-                                lines.add(st);
-                            }
-                        }
-                    }
-                    lines.sort((a,b) -> Integer.compare(
-                        Integer.parseInt(a[seqIdx].trim()),
-                        Integer.parseInt(b[seqIdx].trim())
-                    ));
-                    for (String[] st : lines) {
-                        String stopId = st[stopIdIdx].trim().replace("\"","").replace("'","");
-                        TransportStop stop = stopsMap.get(stopId);
-                        if (stop != null) pts.add(new GamaPoint(stop.getStopLat(), stop.getStopLon()));
-                    }
-                }
-            } else {
-                for (String stopId : orderedStops) {
-                    TransportStop st = stopsMap.get(stopId);
-                    if (st != null) pts.add(new GamaPoint(st.getStopLat(), st.getStopLon()));
-                }
+            List<TransportStop> pts = new ArrayList<>();
+            for (int row = stopTimes.getTripStart(t); row < stopTimes.getTripEnd(t); row++) {
+                TransportStop stop = stopsMap.get(stopTimes.getStopId(row));
+                if (stop != null) pts.add(stop);
             }
 
             if (pts.size() > 1) {
                 String routeId = trip.getRouteId();
                 TransportShape fake = new TransportShape(fakeShapeId, routeId);
-                for (GamaPoint p : pts) { fake.addPoint(p.getX(), p.getY(), scope); }
+                for (TransportStop stop : pts) { fake.addPoint(stop.getStopLat(), stop.getStopLon()); }
                 if (routeTypeMap != null && routeTypeMap.containsKey(routeId)) {
                     fake.setRouteType(routeTypeMap.get(routeId));
                 }
@@ -214,7 +311,7 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
                 shapesMap.put(fakeShapeId, fake);
             }
         }
-        System.out.println("[LAZY] Fake shapes built: " + shapesMap.size());
+        System.out.println("[LAZY] Fake shapes built: " + shapesMap.size() + " (trips: " + tripsMap.size() + ")");
     }
 
     
@@ -271,53 +368,280 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
 
     /**
      * Loads GTFS files and verifies if all required files are present.
+     * Files are parsed sequentially, or concurrently when parallel loading is enabled; in both cases
+     * the results are merged in file name order so the loaded data does not depend on the mode.
      */
     @SuppressWarnings("unchecked")
 	private void loadGtfsFiles(final IScope scope) throws GamaRuntimeException {
         gtfsData = GamaMapFactory.create(Types.STRING, Types.LIST); // Use GamaMap for storing GTFS files
         headerMaps = GamaMapFactory.create(Types.STRING, Types.get(IMap.class));
+        stopTimes = null;
+        lazyFiles.clear();
+        if (loadOptions == null) loadOptions = GTFSLoadOptions.defaults();
         try {
             File folder = this.getFile(scope);
-            File[] files = folder.listFiles();  // List of files in the folder
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile() && file.getName().endsWith(".txt")) {
-                    	// 1. Détecte le séparateur
-                    	char separator = detectSeparator(file);
-                    	//System.out.println("Séparateur détecté pour " + file.getName() + " : " + separator);
-                    	// 2. Mémorise le séparateur pour ce fichier
-                    	fileSeparators.put(file.getName(), separator);
-                    	// 3. Utilise OpenCSV avec le séparateur détecté
-                    	Map<String, Integer> headerMap = new HashMap<>();
-                        	// 3.1 Lit le fichier CSV et récupère le contenu
-                    	List<String[]> fileContent = readCsvFileOpenCSV(file, headerMap);
-                    	String sepStr;
-                        if (separator == ',') sepStr = "virgule (,)";
-                        else if (separator == ';') sepStr = "point-virgule (;)";
-                        else if (separator == '\t') sepStr = "tabulation";
-                        else sepStr = String.valueOf(separator);
-
-                        	// 4. Stocke le contenu du fichier et le header dans les maps
-                    	gtfsData.put(file.getName(), fileContent);
-                    	IMap<String, Integer> headerIMap = GamaMapFactory.wrap(Types.STRING, Types.INT, headerMap);
-                    	headerMaps.put(file.getName(), headerIMap);  
-                        
+            File[] listed = folder.listFiles();  // List of files in the folder
+            List<File> files = new ArrayList<>();
+            if (listed != null) {
+                for (File file : listed) {
+                    if (!file.isFile() || !file.getName().endsWith(".txt")) continue;
+                    String name = file.getName();
+                    if (EAGER_FILES.contains(name)) {
+                        files.add(file);
+                    } else if (OPTIONAL_FILES.contains(name)) {
+                        lazyFiles.put(name, file); // lu à la première demande
+                    } else {
+                        System.out.println("[INFO] Fichier non standard ignoré : " + name);
                     }
                 }
             }
+            files.sort((f1, f2) -> f1.getName().compareTo(f2.getName()));
+
+            // Cache binaire : si les fichiers sources n'ont pas changé, on ne relit pas les CSV
+            File cacheFile = loadOptions.isFeedCache() ? GTFSFeedCache.cacheFileFor(folder, loadOptions) : null;
+            List<ParsedGtfsFile> parsedFiles = cacheFile == null ? null
+                    : GTFSFeedCache.read(cacheFile, files, loadOptions.getCacheSignature());
+            if (parsedFiles == null) {
+                parsedFiles = parseGtfsFiles(files);
+                if (cacheFile != null) GTFSFeedCache.write(cacheFile, files, loadOptions.getCacheSignature(), parsedFiles);
+            }
+            for (ParsedGtfsFile parsed : parsedFiles) {
+                storeParsedFile(parsed);
+            }
         } catch (Exception e) {
             System.err.println("Error while loading GTFS files: " + e.getMessage());
             throw GamaRuntimeException.create(e, scope);
         }
         System.out.println("All GTFS files have been loaded.");
     }
+
+    /**
+     * Parses the given files, in order, sequentially or on a bounded pool in parallel loading mode.
+     */
+    private List<ParsedGtfsFile> parseGtfsFiles(List<File> files) throws Exception {
+        List<ParsedGtfsFile> parsedFiles = new ArrayList<>();
+        if (loadOptions.isParallelLoading() && files.size() > 1) {
+            int threads = Math.min(loadOptions.getLoaderThreads(), files.size());
+            System.out.println("[INFO] Parallel loading of " + files.size() + " GTFS files on " + threads + " threads");
+            ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "gtfs-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<ParsedGtfsFile>> futures = new ArrayList<>();
+                for (File file : files) {
+                    futures.add(executor.submit(() -> parseGtfsFile(file)));
+                }
+                // Fusion dans l'ordre des fichiers (déterministe)
+                for (Future<ParsedGtfsFile> future : futures) {
+                    parsedFiles.add(future.get());
+                }
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } finally {
+                executor.shutdownNow();
+            }
+        } else {
+            for (File file : files) {
+                parsedFiles.add(parseGtfsFile(file));
+            }
+        }
+        return parsedFiles;
+    }
+
+    /**
+     * Parses one file. Does not touch the reader's maps, so it can run on any thread.
+     */
+    private ParsedGtfsFile parseGtfsFile(File file) throws IOException, CsvValidationException {
+        ParsedGtfsFile parsed = new ParsedGtfsFile();
+        parsed.name = file.getName();
+        // 1. Détecte le séparateur
+        parsed.separator = detectSeparator(file);
+        // 2. Lit le fichier CSV et récupère le contenu
+        //    (stop_times.txt volumineux : découpé en blocs lus en parallèle)
+        boolean chunked = "stop_times.txt".equals(parsed.name) && loadOptions.isChunkedParsing()
+                && loadOptions.getChunkThreads() > 1 && file.length() >= loadOptions.getChunkThresholdBytes();
+        if (loadOptions.getTokenizer() == GTFSLoadOptions.Tokenizer.MAPPED) {
+            // Tokenizer mappé en mémoire : stop_times.txt est compilé sans passer par des String[]
+            readCsvFileMapped(file, parsed, chunked ? loadOptions.getChunkThreads() : 1);
+            return parsed;
+        }
+        if (chunked) {
+            parsed.rows = readCsvFileChunked(file, parsed.separator, parsed.headerMap, loadOptions.getChunkThreads());
+        } else {
+            parsed.rows = readCsvFileOpenCSV(file, parsed.headerMap);
+        }
+        // 3. stop_times.txt est compilé en colonnes ; les lignes String[] sont libérées
+        if ("stop_times.txt".equals(parsed.name)) {
+            parsed.stopTimes = StopTimesTable.compile(parsed.rows, parsed.headerMap);
+            parsed.rows = null;
+        }
+        return parsed;
+    }
+
+    /**
+     * Stores a parsed file in gtfsData/headerMaps. Always called from the loading thread.
+     */
+    private void storeParsedFile(ParsedGtfsFile parsed) {
+        fileSeparators.put(parsed.name, parsed.separator);
+        if (parsed.stopTimes != null) {
+            stopTimes = parsed.stopTimes;
+            System.out.println("[INFO] stop_times.txt compilé : " + stopTimes);
+        } else if (parsed.rows != null) {
+            gtfsData.put(parsed.name, parsed.rows);
+        }
+        IMap<String, Integer> headerIMap = GamaMapFactory.wrap(Types.STRING, Types.INT, parsed.headerMap);
+        headerMaps.put(parsed.name, headerIMap);
+    }
     
     /**
      * Retrieves the header map for a given file.
      *
      * @param fileName The name of the file
-     * @return The header map
+     * @return The header map (column name → index in the rows of getFileRows), or null if the file was not loaded
+     */
+    public IMap<String, Integer> getHeaderMap(String fileName) {
+        loadLazyFile(fileName);
+        return headerMaps.get(fileName);
+    }
+
+    /**
+     * Retrieves the rows kept for a given file (only the projected columns, see GTFSColumns).
+     * stop_times.txt is not available as rows: it is compiled into a StopTimesTable.
+     * Optional files (calendar_dates.txt, frequencies.txt, transfers.txt...) are parsed on the first call.
+     *
+     * @param fileName The name of the file
+     * @return The rows, or null if the file is absent or not a GTFS file
      */
+    public List<String[]> getFileRows(String fileName) {
+        if (gtfsData == null) return null;
+        loadLazyFile(fileName);
+        return gtfsData.get(fileName);
+    }
+
+    /**
+     * Parses an optional file the first time it is asked for.
+     */
+    private synchronized void loadLazyFile(String fileName) {
+        File file = lazyFiles.get(fileName);
+        if (file == null) return;
+        try {
+            System.out.println("[INFO] Chargement à la demande de " + fileName);
+            storeParsedFile(parseGtfsFile(file));
+        } catch (Exception e) {
+            System.err.println("Error while loading " + fileName + ": " + e.getMessage());
+            throw GamaRuntimeException.create(e, initScope);
+        } finally {
+            lazyFiles.remove(fileName);
+        }
+    }
+
+    /**
+     * Column projection: restricts the header map of a file to the columns listed in GTFSColumns
+     * and the extra columns of the load options.
+     *
+     * @return The index in the file of each kept column, or null if every column is kept.
+     */
+    private int[] projectColumns(String fileName, Map<String, Integer> headerMap) {
+        if (!loadOptions.isColumnProjection()) return null;
+        return GTFSColumns.project(headerMap, GTFSColumns.keptColumns(fileName, loadOptions.getExtraColumns(fileName)));
+    }
+
+    /**
+     * Builds the identifier dictionaries once the transport objects exist. Trips and stops reuse the
+     * indices of the stop_times table (trips only found in trips.txt come after), so a stop_times row
+     * gives its TransportTrip and TransportStop through an array access.
+     */
+    private void buildIdDictionaries() {
+        tripDictionary = stopTimes != null ? stopTimes.getTripDictionary().copy() : new IdDictionary();
+        for (TransportTrip trip : tripsMap.values()) tripDictionary.intern(trip.getTripId());
+        tripsByIndex = new TransportTrip[tripDictionary.size()];
+        for (TransportTrip trip : tripsMap.values()) {
+            tripsByIndex[tripDictionary.indexOf(trip.getTripId())] = trip;
+        }
+
+        // Seuls les stops présents dans stop_times.txt sont créés : le dictionnaire de la table suffit
+        stopDictionary = stopTimes != null ? stopTimes.getStopDictionary() : new IdDictionary();
+        stopsByIndex = new TransportStop[stopDictionary.size()];
+        for (TransportStop stop : stopsMap.values()) {
+            int s = stopDictionary.indexOf(stop.getStopId());
+            if (s >= 0) stopsByIndex[s] = stop;
+            stop.setTripsByIndex(tripsByIndex);
+        }
+        System.out.println("[INFO] Dictionnaires d'identifiants : " + tripDictionary.size() + " trips, "
+                + stopDictionary.size() + " stops");
+    }
+
+    public IdDictionary getTripDictionary() { return tripDictionary; }
+    public IdDictionary getStopDictionary() { return stopDictionary; }
+
+    /** @return The trip of a trip index (see getTripDictionary), or null. */
+    public TransportTrip getTripByIndex(int tripIndex) {
+        return tripsByIndex != null && tripIndex >= 0 && tripIndex < tripsByIndex.length ? tripsByIndex[tripIndex] : null;
+    }
+
+    /** @return The stop of a stop index (see getStopDictionary), or null. */
+    public TransportStop getStopByIndex(int stopIndex) {
+        return stopsByIndex != null && stopIndex >= 0 && stopIndex < stopsByIndex.length ? stopsByIndex[stopIndex] : null;
+    }
+
+    /**
+     * Gives each shape its points sorted by shape_pt_sequence (ties kept in file order), so that feeds whose
+     * shapes.txt is not sorted load correctly. The rows are bucketed by shape, then the (sequence, row) keys
+     * of each shape are sorted as a long array; the shapes are sorted in parallel unless the parallel shapes
+     * option is off (independent of the parallel loading of the files).
+     * With a shape tolerance in the load options, each shape is also simplified (Douglas-Peucker) in the
+     * same tasks, so the simplification follows the same parallel shapes switch.
+     */
+    private void sortShapePoints(IScope scope, List<TransportShape> shapes, int[] shapeOfRow, int[] sequenceOfRow,
+            double[] lonLat, int nbPoints) {
+        int nbShapes = shapes.size();
+        int[] shapeStart = new int[nbShapes + 1]; // lignes de la shape s : [shapeStart[s], shapeStart[s + 1])
+        for (int i = 0; i < nbPoints; i++) shapeStart[shapeOfRow[i] + 1]++;
+        for (int s = 0; s < nbShapes; s++) shapeStart[s + 1] += shapeStart[s];
+        long[] keys = new long[nbPoints];
+        int[] cursor = Arrays.copyOf(shapeStart, nbShapes);
+        for (int i = 0; i < nbPoints; i++) keys[cursor[shapeOfRow[i]]++] = ((long) sequenceOfRow[i] << 32) | i;
+
+        // tâches de tailles voisines (en nombre de points), chacune sur une plage de shapes
+        int threads = loadOptions.isParallelShapes() ? loadOptions.getLoaderThreads() : 1;
+        double tolerance = loadOptions.getShapeTolerance();
+        long perTask = Math.max(1, nbPoints / (4L * threads));
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int first = 0; first < nbShapes; ) {
+            int last = first + 1;
+            while (last < nbShapes && shapeStart[last] - shapeStart[first] < perTask) last++;
+            int from = first, to = last;
+            tasks.add(() -> {
+                int kept = 0;
+                for (int s = from; s < to; s++) {
+                    Arrays.sort(keys, shapeStart[s], shapeStart[s + 1]);
+                    double[] points = new double[2 * (shapeStart[s + 1] - shapeStart[s])];
+                    for (int k = shapeStart[s]; k < shapeStart[s + 1]; k++) {
+                        int row = (int) keys[k];
+                        points[2 * (k - shapeStart[s])] = lonLat[2 * row];
+                        points[2 * (k - shapeStart[s]) + 1] = lonLat[2 * row + 1];
+                    }
+                    shapes.get(s).setRawCoordinates(tolerance > 0 ? PolylineSimplifier.simplify(points, tolerance) : points);
+                    kept += shapes.get(s).getPointCount();
+                }
+                return kept;
+            });
+            first = last;
+        }
+        if (tasks.isEmpty()) return;
+        try {
+            int kept = 0;
+            for (int k : runChunkTasks(tasks, threads, "shapes.txt")) kept += k;
+            if (tolerance > 0) {
+                System.out.println("[INFO] Shapes simplified (tolerance " + tolerance + " m): " + nbPoints + " -> " + kept + " points.");
+            }
+        } catch (IOException | CsvValidationException e) {
+            throw GamaRuntimeException.create(e, scope);
+        }
+    }
+
     private void createTransportObjectsWithShapes(
     	    IScope scope,
     	    IMap<String, Integer> routeTypeMap,
@@ -326,34 +650,53 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
     	)
     {	
     	    // 1. Création des TransportShape à partir de shapes.txt
-    	    List<String[]> shapesData = gtfsData.get("shapes.txt");
-    	    IMap<String, Integer> headerMap = headerMaps.get("shapes.txt");
+    	    List<String[]> shapesData = getFileRows("shapes.txt");
+    	    IMap<String, Integer> headerMap = getHeaderMap("shapes.txt");
     	    Integer shapeIdIndex = findColumnIndex(headerMap, "shape_id");
     	    Integer latIndex = findColumnIndex(headerMap, "shape_pt_lat");
     	    Integer lonIndex = findColumnIndex(headerMap, "shape_pt_lon");
-
+    	    Integer sequenceIndex = findColumnIndex(headerMap, "shape_pt_sequence");
+    	    if (sequenceIndex == null) System.out.println("[WARNING] shape_pt_sequence not found in shapes.txt: shape points kept in file order.");
+
+    	    // Une passe : lignes groupées par shape (ordre de première apparition), coordonnées brutes
+    	    // projetées à la création des agents (TransportShape.projectAll)
+    	    int nbRows = shapesData.size();
+    	    int[] shapeOfRow = new int[nbRows];
+    	    int[] sequenceOfRow = new int[nbRows];
+    	    double[] lonLat = new double[2 * nbRows];
+    	    List<TransportShape> shapes = new ArrayList<>();
+    	    Map<String, Integer> shapeIndex = new HashMap<>();
+    	    int nbPoints = 0;
     	    for (String[] fields : shapesData) {
     	        if (fields == null) continue;
     	        try {
     	        	String shapeId = fields[shapeIdIndex].trim().replace("\"","").replace("'","");
     	        	double lat = Double.parseDouble(fields[latIndex]);
     	        	double lon = Double.parseDouble(fields[lonIndex]);
+    	        	int sequence = sequenceIndex != null ? Integer.parseInt(fields[sequenceIndex].trim().replace("\"","")) : nbPoints;
 
-    	        	TransportShape shape = shapesMap.get(shapeId);
-    	        	if (shape == null) { shape = new TransportShape(shapeId, ""); shapesMap.put(shapeId, shape); }
-    	        	shape.addPoint(lat, lon, scope);
+    	        	Integer s = shapeIndex.get(shapeId);
+    	        	if (s == null) { s = shapes.size(); shapeIndex.put(shapeId, s); shapes.add(new TransportShape(shapeId, "")); }
+    	        	shapeOfRow[nbPoints] = s;
+    	        	sequenceOfRow[nbPoints] = sequence;
+    	        	lonLat[2 * nbPoints] = lon;
+    	        	lonLat[2 * nbPoints + 1] = lat;
+    	        	nbPoints++;
 
     	        } catch (Exception e) {
     	            System.err.println("[ERROR] Processing shape line: " + java.util.Arrays.toString(fields) + " -> " + e.getMessage());
     	        }
     	    }
+    	    sortShapePoints(scope, shapes, shapeOfRow, sequenceOfRow, lonLat, nbPoints);
+    	    for (TransportShape shape : shapes) shapesMap.put(shape.getShapeId(), shape);
 
     	    // 2. Création des trips (avec shapeId réel)
-    	    List<String[]> tripsData = gtfsData.get("trips.txt");
-    	    IMap<String, Integer> tripsHeaderMap = headerMaps.get("trips.txt");
+    	    List<String[]> tripsData = getFileRows("trips.txt");
+    	    IMap<String, Integer> tripsHeaderMap = getHeaderMap("trips.txt");
     	    Integer routeIdIndex = findColumnIndex(tripsHeaderMap, "route_id");
     	    Integer tripIdIndex = findColumnIndex(tripsHeaderMap, "trip_id");
     	    Integer shapeIdIdx = findColumnIndex(tripsHeaderMap, "shape_id");
+    	    Integer blockIdIdx = findColumnIndex(tripsHeaderMap, "block_id");
 
     	    for (String[] fields : tripsData) {
     	        if (fields == null) continue;
@@ -368,6 +711,7 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
     	            TransportTrip trip = tripsMap.get(tripId);
     	            if (trip == null) {
     	                trip = new TransportTrip(routeId, "", tripId, 0, shapeId);
+    	                trip.setBlockId(blockIdOf(fields, blockIdIdx));
     	                tripsMap.put(tripId, trip);
     	            }
     	            if (shapeId != null && shapesMap.containsKey(shapeId)) {
@@ -400,80 +744,31 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
     	    }
     	}
     
-    private void createTransportObjectsWithFakeShapes(
-    	    IScope scope,
-    	    IMap<String, Integer> routeTypeMap
-    	) {
-    	    // 1. Création des trips et shapes "fictifs"
-    	    List<String[]> tripsData = gtfsData.get("trips.txt");
-    	    IMap<String, Integer> tripsHeaderMap = headerMaps.get("trips.txt");
-    	    Integer routeIdIndex = findColumnIndex(tripsHeaderMap, "route_id");
-    	    Integer tripIdIndex = findColumnIndex(tripsHeaderMap, "trip_id");
-
-    	    // On crée les trips, et pour chaque trip, on va créer un fake shape
-    	    for (String[] fields : tripsData) {
-    	        if (fields == null) continue;
-    	        try {
-    	            String routeId = fields[routeIdIndex].trim().replace("\"", "").replace("'", "");
-    	            String tripId = fields[tripIdIndex].trim().replace("\"", "").replace("'", "");
-    	            String fakeShapeId = "fake_" + tripId; // garanti unique
-
-    	            // Crée le trip, avec shapeId = fakeShapeId
-    	            TransportTrip trip = new TransportTrip(routeId, "", tripId, 0, fakeShapeId);
-    	            tripsMap.put(tripId, trip);
-
-    	            // Récupère la liste des stops pour ce trip
-    	            List<String> stopIdsInOrder = new ArrayList<>();
-    	            List<String[]> stopTimesData = gtfsData.get("stop_times.txt");
-    	            IMap<String, Integer> stopTimesHeader = headerMaps.get("stop_times.txt");
-    	            Integer tripIdIdxST = findColumnIndex(stopTimesHeader, "trip_id");
-    	            Integer stopIdIdxST = findColumnIndex(stopTimesHeader, "stop_id");
-    	            if (stopTimesData != null && tripIdIdxST != null && stopIdIdxST != null) {
-    	                for (String[] stFields : stopTimesData) {
-    	                    if (stFields == null) continue;
-    	                    String tripIdST = stFields[tripIdIdxST].trim().replace("\"", "").replace("'", "");
-    	                    if (tripIdST.equals(tripId)) {
-    	                        String stopId = stFields[stopIdIdxST].trim().replace("\"", "").replace("'", "");
-    	                        stopIdsInOrder.add(stopId);
-    	                    }
-    	                }
-    	            }
-    	            // On construit la fake polyline avec les coordonnées des stops
-    	            List<GamaPoint> shapePoints = new ArrayList<>();
-    	            for (String stopId : stopIdsInOrder) {
-    	                TransportStop stop = stopsMap.get(stopId);
-    	                if (stop != null) {
-    	                    shapePoints.add(new GamaPoint(stop.getStopLat(), stop.getStopLon()));
-    	                }
-    	            }
-    	            // Crée le fake shape seulement s'il y a au moins 2 points
-    	            if (shapePoints.size() > 1) {
-    	            	TransportShape fakeShape = new TransportShape(fakeShapeId, routeId);
-    	                for (GamaPoint pt : shapePoints) fakeShape.addPoint(pt.getX(), pt.getY(), scope);
-    	                // On peut setter la routeType à ce fakeShape
-    	                if (routeTypeMap.containsKey(routeId)) fakeShape.setRouteType(routeTypeMap.get(routeId));
-    	                // TripId pour référence
-    	                fakeShape.setTripId(tripId);
-    	                shapesMap.put(fakeShapeId, fakeShape);
-    	            }
+    /** @return The block_id of a trips.txt row, or null when the column is missing or empty. */
+    private static String blockIdOf(String[] fields, Integer blockIdIndex) {
+        if (blockIdIndex == null || fields.length <= blockIdIndex || fields[blockIdIndex] == null) return null;
+        String blockId = fields[blockIdIndex].trim().replace("\"", "").replace("'", "");
+        return blockId.isEmpty() ? null : blockId;
+    }
 
-    	            // Set le routeType du trip
-    	            if (routeTypeMap.containsKey(routeId)) {
-    	                trip.setRouteType(routeTypeMap.get(routeId));
-    	            }
-    	        } catch (Exception e) {
-    	            
-    	        }
-    	    }
-    	}
-    
+    /**
+     * Creates the trips of a feed without shapes.txt. Trips of the same route serving the same
+     * stop sequence share one fake shape, named after the first of these trips ("fake_" + tripId).
+     * The stop sequences are read in a single pass over the stop_times rows, which are grouped by trip.
+     * The geometries are only built when transport_shape agents are created (buildFakeShapesLazily).
+     */
     private void createTripsWithoutShapes(IScope scope, IMap<String, Integer> routeTypeMap) {
-        List<String[]> tripsData = gtfsData.get("trips.txt");
-        IMap<String, Integer> tripsHeader = headerMaps.get("trips.txt");
+        List<String[]> tripsData = getFileRows("trips.txt");
+        IMap<String, Integer> tripsHeader = getHeaderMap("trips.txt");
         Integer routeIdIndex = findColumnIndex(tripsHeader, "route_id");
         Integer tripIdIndex  = findColumnIndex(tripsHeader,  "trip_id");
+        Integer blockIdIndex = findColumnIndex(tripsHeader, "block_id");
         if (tripsData == null || routeIdIndex == null || tripIdIndex == null) return;
 
+        fakeShapeTrips = new LinkedHashMap<>();
+        IdDictionary routes = new IdDictionary();
+        Map<IntSequence, String> shapeIdBySequence = new HashMap<>();
+
         for (String[] fields : tripsData) {
             if (fields == null) continue;
             try {
@@ -481,9 +776,22 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
                 String tripId  = fields[tripIdIndex ].trim().replace("\"","").replace("'","");
                 String fakeShapeId = "fake_" + tripId;
 
+                int t = stopTimes != null ? stopTimes.indexOfTrip(tripId) : -1;
+                if (t >= 0 && stopTimes.getTripEnd(t) - stopTimes.getTripStart(t) > 1) {
+                    // clé : route + pattern (suite des arrêts)
+                    IntSequence sequence = new IntSequence(routes.intern(routeId), stopTimes.getTripPatterns().getPatternOf(t));
+                    String shared = shapeIdBySequence.putIfAbsent(sequence, fakeShapeId);
+                    if (shared != null) {
+                        fakeShapeId = shared;
+                    } else {
+                        fakeShapeTrips.put(fakeShapeId, t);
+                    }
+                }
+
                 TransportTrip trip = tripsMap.get(tripId);
                 if (trip == null) {
-                    trip = new TransportTrip(routeId, "", tripId, 0, fakeShapeId); // shapeId placeholder
+                    trip = new TransportTrip(routeId, "", tripId, 0, fakeShapeId);
+                    trip.setBlockId(blockIdOf(fields, blockIdIndex));
                     if (routeTypeMap.containsKey(routeId)) trip.setRouteType(routeTypeMap.get(routeId));
                     tripsMap.put(tripId, trip);
                 }
@@ -510,8 +818,8 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
 
         // 1. Lecture des routeType par routeId (commune)
         IMap<String, Integer> routeTypeMap = GamaMapFactory.create(Types.STRING, Types.INT);
-        List<String[]> routesData = gtfsData.get("routes.txt");
-        IMap<String, Integer> routesHeader = headerMaps.get("routes.txt");
+        List<String[]> routesData = getFileRows("routes.txt");
+        IMap<String, Integer> routesHeader = getHeaderMap("routes.txt");
 
         if (routesData != null && routesHeader != null) {
             Integer routeIdIndex = findColumnIndex(routesHeader, "route_id");
@@ -535,21 +843,15 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
 
         // 2. Collecte des stop_ids utilisés (commun)
         Set<String> usedStopIds = new HashSet<>();
-        List<String[]> stopTimesData = gtfsData.get("stop_times.txt");
-        IMap<String, Integer> stopTimesHeader = headerMaps.get("stop_times.txt");
-
-        if (stopTimesData != null && stopTimesHeader != null && stopTimesHeader.containsKey("stop_id")) {
-            Integer stopIdIndex = stopTimesHeader.get("stop_id");
-            if (stopIdIndex == null) throw new RuntimeException("stop_id column not found in stop_times.txt!");
-            for (String[] fields : stopTimesData) {
-                if (fields == null || fields.length <= stopIdIndex) continue;
-                usedStopIds.add(fields[stopIdIndex].trim().replace("\"", "").replace("'", ""));
+        if (stopTimes != null) {
+            for (int s = 0; s < stopTimes.getStopCount(); s++) {
+                usedStopIds.add(stopTimes.getStopIdAt(s));
             }
         }
 
         // 3. Création des stops (commun)
-        List<String[]> stopsData = gtfsData.get("stops.txt");
-        IMap<String, Integer> headerIMap = headerMaps.get("stops.txt");
+        List<String[]> stopsData = getFileRows("stops.txt");
+        IMap<String, Integer> headerIMap = getHeaderMap("stops.txt");
 
         if (stopsData != null && headerIMap != null) {
             Integer stopIdIndex = findColumnIndex(headerIMap, "stop_id");
@@ -561,29 +863,38 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
                 throw new RuntimeException("stop_id, stop_name, stop_lat or stop_lon column not found in stops.txt!");
             }
 
+            // Lecture des stops, puis projection de toutes les coordonnées en une fois
+            List<String[]> keptStops = new ArrayList<>();
+            double[] lonLat = new double[2 * stopsData.size()];
             for (String[] fields : stopsData) {
                 if (fields == null) continue;
                 try {
                     String stopId = fields[stopIdIndex].trim().replace("\"", "").replace("'", ""); 
                     if (!usedStopIds.contains(stopId)) continue;
 
-                    String stopName = fields[stopNameIndex];
                     double stopLat = Double.parseDouble(fields[stopLatIndex]);
                     double stopLon = Double.parseDouble(fields[stopLonIndex]);
-
-                    TransportStop stop = new TransportStop(stopId, stopName, stopLat, stopLon, scope);
-                    stopsMap.put(stopId, stop);
+                    lonLat[2 * keptStops.size()] = stopLon;
+                    lonLat[2 * keptStops.size() + 1] = stopLat;
+                    keptStops.add(fields);
                 } catch (Exception e) {
                     System.err.println("[ERROR] Processing stop line: " + java.util.Arrays.toString(fields) + " -> " + e.getMessage());
                 }
             }
+            double[] xy = SpatialUtils.toGamaCRS(scope, Arrays.copyOf(lonLat, 2 * keptStops.size()));
+            for (int i = 0; i < keptStops.size(); i++) {
+                String[] fields = keptStops.get(i);
+                String stopId = fields[stopIdIndex].trim().replace("\"", "").replace("'", "");
+                GamaPoint location = new GamaPoint(xy[2 * i], xy[2 * i + 1], 0.0);
+                stopsMap.put(stopId, new TransportStop(stopId, fields[stopNameIndex], lonLat[2 * i + 1], lonLat[2 * i], location));
+            }
             System.out.println("Nombre d'objets TransportStop créés : " + stopsMap.size());System.out.println("Nombre d'objets TransportStop créés : " + stopsMap.size());
         }
         System.out.println("Finished creating TransportStop objects.");
 
         // 4. Teste la présence de shapes.txt
-        List<String[]> shapesData = gtfsData.get("shapes.txt");
-        IMap<String, Integer> headerMap = headerMaps.get("shapes.txt");
+        List<String[]> shapesData = getFileRows("shapes.txt");
+        IMap<String, Integer> headerMap = getHeaderMap("shapes.txt");
         boolean shapesTxtExists = (shapesData != null && headerMap != null && !shapesData.isEmpty());
 
         // 5. Appelle la bonne méthode selon shapes.txt
@@ -616,6 +927,7 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
         System.out.println("--------------------------------------------");
 
         System.out.println("[INFO] Finished assigning routeType to TransportShape and TransportTrip.");
+        buildIdDictionaries();
         System.out.println("[INFO] Calling computeDepartureInfo...");
         computeDepartureInfo(scope);
         
@@ -627,12 +939,12 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
                 System.out.println("[DEBUG] Trip " + trip.getTripId() + " a routeType=-1 => ignoré");
                 continue;
             }
-            List<String> orderedStops = trip.getStopsInOrder();
-            if (orderedStops == null || orderedStops.isEmpty()) {
+            if (trip.getStopCount() == 0) {
                 continue;
             }
 
-            for (String stopId : orderedStops) {
+            for (int k = 0; k < trip.getStopCount(); k++) {
+                String stopId = trip.getStopId(k);
                 TransportStop stop = stopsMap.get(stopId);
                 if (stop != null && stop.getRouteType() == -1) {
                     stop.setRouteType(routeType);
@@ -655,8 +967,8 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
             int routeType = trip.getRouteType();
             if (routeType == -1) continue;
 
-            for (String stopId : trip.getStopsInOrder()) {
-                TransportStop stop = stopsMap.get(stopId);
+            for (int k = 0; k < trip.getStopCount(); k++) {
+                TransportStop stop = stopsMap.get(trip.getStopId(k));
                 if (stop != null && stop.getRouteType() == -1) {
                     stop.setRouteType(routeType);
                     counter++;
@@ -670,7 +982,7 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
 
 
     private char detectSeparator(File file) throws IOException {
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+        try (BufferedReader br = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
             String line;
             while ((line = br.readLine()) != null) {
                 // Ignore les lignes vides
@@ -706,7 +1018,7 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
     }
 
     /**
-     * Reads a CSV file 
+     * Reads a CSV file in UTF-8 (the encoding required by GTFS), like the chunked and mapped paths.
      */
     private List<String[]> readCsvFileOpenCSV(File file, Map<String, Integer> headerMap) throws IOException, CsvValidationException {
         List<String[]> content = new ArrayList<>();
@@ -716,47 +1028,294 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
 
         char separator = detectSeparator(file);
  
-        try (CSVReader reader = new CSVReaderBuilder(new FileReader(file))
+        try (CSVReader reader = new CSVReaderBuilder(new FileReader(file, StandardCharsets.UTF_8))
                                     .withSkipLines(0)
                                     .withCSVParser(new CSVParserBuilder().withSeparator(separator).build())
                                     .build()) {
-            // Lis et nettoie le header
-            String[] headers = reader.readNext();
-            while (headers != null && headers.length == 1 && headers[0].trim().isEmpty()) {
-                headers = reader.readNext();
+            readCsvHeader(reader, headerMap);
+            int[] kept = projectColumns(file.getName(), headerMap);
+            readCsvRows(reader, headerMap.size(), kept, content);
+        }
+        //System.out.println("⇒ Fichier '" + file.getName() + "' : " + content.size() + " lignes lues.");
+        return content;
+    }
+
+    /**
+     * Reads a large CSV file in byte ranges parsed concurrently (one OpenCSV reader per range),
+     * then concatenates the ranges in file order. The rows are the same as readCsvFileOpenCSV's.
+     */
+    private List<String[]> readCsvFileChunked(File file, char separator, Map<String, Integer> headerMap, int threads)
+            throws IOException, CsvValidationException {
+        long[] bounds = CsvChunkSplitter.split(file, threads);
+        try (CSVReader reader = openCsvRange(file, 0, bounds[0], separator)) {
+            readCsvHeader(reader, headerMap);
+        }
+        int[] kept = projectColumns(file.getName(), headerMap);
+        int nbColumns = headerMap.size();
+        int nbChunks = bounds.length - 1;
+        System.out.println("[INFO] " + file.getName() + " : lecture en " + nbChunks + " blocs parallèles");
+
+        List<Callable<List<String[]>>> tasks = new ArrayList<>();
+        for (int i = 0; i < nbChunks; i++) {
+            final long start = bounds[i];
+            final long end = bounds[i + 1];
+            tasks.add(() -> {
+                List<String[]> chunk = new ArrayList<>();
+                try (CSVReader reader = openCsvRange(file, start, end, separator)) {
+                    readCsvRows(reader, nbColumns, kept, chunk);
+                }
+                return chunk;
+            });
+        }
+        List<List<String[]>> chunks = runChunkTasks(tasks, threads, file.getName());
+        int total = 0;
+        for (List<String[]> chunk : chunks) total += chunk.size();
+        List<String[]> content = new ArrayList<>(total);
+        for (List<String[]> chunk : chunks) content.addAll(chunk);
+        return content;
+    }
+
+    /**
+     * Runs the parsing tasks of the ranges of a file on a bounded pool and returns their results
+     * in task order. A single task is run on the calling thread.
+     */
+    private <T> List<T> runChunkTasks(List<Callable<T>> tasks, int threads, String fileName)
+            throws IOException, CsvValidationException {
+        if (tasks.size() == 1) {
+            try {
+                return List.of(tasks.get(0).call());
+            } catch (IOException | CsvValidationException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Error while reading " + fileName + ": " + e.getMessage(), e);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())), runnable -> {
+            Thread thread = new Thread(runnable, "gtfs-chunk-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (Callable<T> task : tasks) futures.add(executor.submit(task));
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> future : futures) results.add(future.get());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + fileName, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof CsvValidationException) throw (CsvValidationException) cause;
+            throw new IOException("Error while reading " + fileName + ": " + cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Largest byte range mapped at once by the mapped tokenizer. */
+    private static final long MAX_MAPPED_RANGE = 1L << 30;
+
+    /** Result of tokenizing one byte range with the mapped tokenizer. */
+    private static class MappedRange {
+        List<String[]> rows;
+        StopTimesTable.Builder stopTimes;
+        int invalid = 0;
+    }
+
+    /**
+     * Reads a file with the memory-mapped tokenizer instead of OpenCSV.
+     * stop_times.txt is compiled straight into a StopTimesTable: times, stop_sequence and
+     * shape_dist_traveled are parsed from the bytes and only trip_id and stop_id become Strings.
+     * The other files give the same rows as readCsvFileOpenCSV.
+     */
+    private void readCsvFileMapped(File file, ParsedGtfsFile parsed, int threads) throws IOException, CsvValidationException {
+        if (!file.isFile()) {
+            throw new IOException(file.getAbsolutePath() + " is not a valid file.");
+        }
+        long length = file.length();
+        int nbRanges = Math.max(threads, (int) (length / MAX_MAPPED_RANGE) + 1);
+        List<MappedCsvTokenizer> ranges = new ArrayList<>();
+        if (nbRanges > 1) {
+            long[] bounds = CsvChunkSplitter.split(file, nbRanges);
+            readMappedHeader(new MappedCsvTokenizer(MappedCsvTokenizer.map(file, 0, bounds[0]), 0, (int) bounds[0], parsed.separator), parsed.headerMap);
+            for (int i = 0; i < bounds.length - 1; i++) {
+                ranges.add(new MappedCsvTokenizer(MappedCsvTokenizer.map(file, bounds[i], bounds[i + 1]),
+                        0, (int) (bounds[i + 1] - bounds[i]), parsed.separator));
             }
-            if (headers != null) {
-                for (int i = 0; i < headers.length; i++) {
-                    String col = headers[i].trim().replace("\uFEFF", "").toLowerCase();
-                    headerMap.put(col, i);
+            System.out.println("[INFO] " + parsed.name + " : lecture mappée en " + ranges.size() + " blocs parallèles");
+        } else {
+            MappedCsvTokenizer tokenizer = new MappedCsvTokenizer(MappedCsvTokenizer.map(file, 0, length), 0, (int) length, parsed.separator);
+            readMappedHeader(tokenizer, parsed.headerMap);
+            ranges.add(tokenizer);
+        }
+
+        int[] stopTimesColumns = null;
+        if ("stop_times.txt".equals(parsed.name)) {
+            Map<String, Integer> h = parsed.headerMap;
+            if (!h.containsKey("trip_id") || !h.containsKey("stop_id") || !h.containsKey("stop_sequence") || !h.containsKey("departure_time")) {
+                System.err.println("[ERROR] Required columns missing in stop_times.txt!");
+                return;
+            }
+            stopTimesColumns = new int[] { h.get("trip_id"), h.get("stop_id"), h.get("stop_sequence"),
+                    h.getOrDefault("arrival_time", -1), h.get("departure_time"), h.getOrDefault("shape_dist_traveled", -1) };
+        }
+        // Les colonnes non retenues ne sont jamais converties en String
+        final int[] kept = projectColumns(parsed.name, parsed.headerMap);
+
+        final int nbColumns = parsed.headerMap.size();
+        final int[] columns = stopTimesColumns;
+        List<Callable<MappedRange>> tasks = new ArrayList<>();
+        for (MappedCsvTokenizer tokenizer : ranges) {
+            tasks.add(() -> tokenizeMappedRange(tokenizer, nbColumns, kept, columns));
+        }
+        List<MappedRange> results = runChunkTasks(tasks, threads, parsed.name);
+
+        if (columns != null) {
+            StopTimesTable.Builder builder = results.get(0).stopTimes;
+            int invalid = results.get(0).invalid;
+            for (int i = 1; i < results.size(); i++) {
+                builder.addAll(results.get(i).stopTimes);
+                invalid += results.get(i).invalid;
+            }
+            if (invalid > 0) {
+                System.out.println("[INFO] stop_times.txt : " + invalid + " lignes ignorées (incomplètes ou stop_sequence invalide)");
+            }
+            parsed.stopTimes = builder.build();
+        } else {
+            int total = 0;
+            for (MappedRange range : results) total += range.rows.size();
+            parsed.rows = new ArrayList<>(total);
+            for (MappedRange range : results) parsed.rows.addAll(range.rows);
+        }
+    }
+
+    // Lis et nettoie le header (tokenizer mappé)
+    private void readMappedHeader(MappedCsvTokenizer tokenizer, Map<String, Integer> headerMap) {
+        while (tokenizer.nextRecord()) {
+            if (tokenizer.isBlankRecord() && tokenizer.fieldCount() == 1) continue;
+            for (int i = 0; i < tokenizer.fieldCount(); i++) {
+                String col = tokenizer.getString(i).trim().replace("\uFEFF", "").toLowerCase();
+                headerMap.put(col, i);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Tokenizes the records of one range. With stopTimesColumns (trip_id, stop_id, stop_sequence,
+     * arrival_time, departure_time, shape_dist_traveled indices, -1 when absent) the records go
+     * into a StopTimesTable.Builder, otherwise they are returned as String[] rows, restricted to the
+     * kept columns when kept is not null, padded to nbColumns otherwise.
+     */
+    private static MappedRange tokenizeMappedRange(MappedCsvTokenizer tokenizer, int nbColumns, int[] kept, int[] stopTimesColumns) {
+        MappedRange range = new MappedRange();
+        if (stopTimesColumns == null) {
+            range.rows = new ArrayList<>();
+            while (tokenizer.nextRecord()) {
+                if (tokenizer.isBlankRecord()) continue; // Ignore les lignes totalement vides
+                String[] line;
+                if (kept != null) {
+                    line = new String[kept.length];
+                    for (int i = 0; i < kept.length; i++) line[i] = tokenizer.getString(kept[i]);
+                } else {
+                    line = new String[Math.max(nbColumns, tokenizer.fieldCount())];
+                    for (int i = 0; i < line.length; i++) line[i] = tokenizer.getString(i);
                 }
+                range.rows.add(line);
             }
-            //System.out.println("Headers trouvés dans " + file.getName() + " : " + headerMap.keySet());
-            String[] line;
-            while ((line = reader.readNext()) != null) {
-                // Complète les champs manquants (à droite)
-                if (line.length < headerMap.size()) {
-                    String[] newLine = new String[headerMap.size()];
-                    System.arraycopy(line, 0, newLine, 0, line.length);
-                    for (int i = line.length; i < headerMap.size(); i++) {
-                        newLine[i] = "";
-                    }
-                    line = newLine;
+            return range;
+        }
+
+        int tripIdx = stopTimesColumns[0], stopIdx = stopTimesColumns[1], seqIdx = stopTimesColumns[2];
+        int arrIdx = stopTimesColumns[3], depIdx = stopTimesColumns[4], distIdx = stopTimesColumns[5];
+        StopTimesTable.Builder builder = new StopTimesTable.Builder(1024);
+        // Les lignes d'un même trip se suivent : on réutilise la String du trip précédent
+        byte[] lastTripBytes = null;
+        String lastTripId = null;
+        while (tokenizer.nextRecord()) {
+            if (tokenizer.isBlankRecord()) continue;
+            int seq = tokenizer.getInt(seqIdx, Integer.MIN_VALUE);
+            if (seq == Integer.MIN_VALUE) {
+                // stop_sequence manquant ou non numérique : ligne ignorée
+                range.invalid++;
+                continue;
+            }
+            int dep = tokenizer.getTime(depIdx);
+            int arr = arrIdx >= 0 ? tokenizer.getTime(arrIdx) : StopTimesTable.NO_TIME;
+            if (arr == StopTimesTable.NO_TIME) arr = dep;
+            if (dep == StopTimesTable.NO_TIME) dep = arr;
+            float dist = distIdx >= 0 ? (float) tokenizer.getDouble(distIdx, Double.NaN) : Float.NaN;
+            String tripId;
+            if (tokenizer.fieldEquals(tripIdx, lastTripBytes)) {
+                tripId = lastTripId;
+            } else {
+                lastTripBytes = tokenizer.getBytes(tripIdx);
+                tripId = lastTripId = StopTimesTable.cleanId(tokenizer.getString(tripIdx));
+            }
+            builder.add(tripId, StopTimesTable.cleanId(tokenizer.getString(stopIdx)), arr, dep, seq, dist);
+        }
+        range.stopTimes = builder;
+        return range;
+    }
+
+    private CSVReader openCsvRange(File file, long start, long end, char separator) throws IOException {
+        return new CSVReaderBuilder(new InputStreamReader(CsvChunkSplitter.openRange(file, start, end), StandardCharsets.UTF_8))
+                .withCSVParser(new CSVParserBuilder().withSeparator(separator).build())
+                .build();
+    }
+
+    // Lis et nettoie le header
+    private void readCsvHeader(CSVReader reader, Map<String, Integer> headerMap) throws IOException, CsvValidationException {
+        String[] headers = reader.readNext();
+        while (headers != null && headers.length == 1 && headers[0].trim().isEmpty()) {
+            headers = reader.readNext();
+        }
+        if (headers != null) {
+            for (int i = 0; i < headers.length; i++) {
+                String col = headers[i].trim().replace("\uFEFF", "").toLowerCase();
+                headerMap.put(col, i);
+            }
+        }
+        //System.out.println("Headers trouvés : " + headerMap.keySet());
+    }
+
+    /**
+     * Reads the remaining records. With kept (see projectColumns) only the kept columns are stored.
+     */
+    private void readCsvRows(CSVReader reader, int nbColumns, int[] kept, List<String[]> content) throws IOException, CsvValidationException {
+        String[] line;
+        while ((line = reader.readNext()) != null) {
+            if (kept != null) {
+                if (isBlankLine(line)) continue;
+                String[] projected = new String[kept.length];
+                for (int i = 0; i < kept.length; i++) {
+                    projected[i] = kept[i] < line.length ? line[kept[i]] : "";
                 }
-                // Ignore les lignes totalement vides
-                boolean isEmpty = true;
-                for (String field : line) {
-                    if (field != null && !field.trim().isEmpty()) {
-                        isEmpty = false;
-                        break;
-                    }
+                content.add(projected);
+                continue;
+            }
+            // Complète les champs manquants (à droite)
+            if (line.length < nbColumns) {
+                String[] newLine = new String[nbColumns];
+                System.arraycopy(line, 0, newLine, 0, line.length);
+                for (int i = line.length; i < nbColumns; i++) {
+                    newLine[i] = "";
                 }
-                if (isEmpty) continue;
-                content.add(line); // Ajoute le tableau de champs
+                line = newLine;
             }
+            // Ignore les lignes totalement vides
+            if (isBlankLine(line)) continue;
+            content.add(line); // Ajoute le tableau de champs
         }
-        //System.out.println("⇒ Fichier '" + file.getName() + "' : " + content.size() + " lignes lues.");
-        return content;
+    }
+
+    private static boolean isBlankLine(String[] line) {
+        for (String field : line) {
+            if (field != null && !field.trim().isEmpty()) return false;
+        }
+        return true;
     }
 
 
@@ -795,7 +1354,9 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
     public IList<String> getAttributes(final IScope scope) {
     	System.out.println("Retrieving GTFS data attributes...");
     	if (gtfsData != null) {
-            Set<String> keySet = gtfsData.keySet();
+            Set<String> keySet = new HashSet<>(gtfsData.keySet());
+            if (stopTimes != null) keySet.add("stop_times.txt");
+            keySet.addAll(lazyFiles.keySet()); // fichiers optionnels disponibles, lus à la demande
             System.out.println("Attributes retrieved: " + keySet);
             return GamaListFactory.createWithoutCasting(Types.STRING, keySet.toArray(new String[0]));
         } else {
@@ -888,97 +1449,61 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
             useAllTrips = true;
             System.out.println("[INFO] Fallback → TOUS LES TRIPS SERONT UTILISÉS");
         }
-        // 2. Détermination des trips actifs selon la stratégie
-        Set<String> activeTripIds;
+        // 2. Détermination des trips actifs selon la stratégie (BitSet sur les indices de trips)
+        if (tripDictionary == null) buildIdDictionaries();
+        BitSet activeTrips = new BitSet(tripDictionary.size());
         
         if (useAllTrips) {
             // ✅ CAS 3 : Utiliser TOUS les trips
-            activeTripIds = new HashSet<>(tripsMap.keySet());
+            for (int t = 0; t < tripsByIndex.length; t++) {
+                if (tripsByIndex[t] != null) activeTrips.set(t);
+            }
             System.out.println("=== CAS 3 : TOUS LES TRIPS UTILISÉS ===");
-            System.out.println("Nombre total de trips: " + activeTripIds.size());
+            System.out.println("Nombre total de trips: " + activeTrips.cardinality());
         } else {
-            // ✅ CAS 1 & 2 : Filtrage par date (logique existante)
-            activeTripIds = getActiveTripIdsForDate(scope, simulationDate);
+            // ✅ CAS 1 & 2 : Filtrage par date (index du calendrier des services)
+            activeTrips.or(getActiveTripIndexesForDate(simulationDate));
             System.out.println("=== CAS 1/2 : FILTRAGE PAR DATE ===");
             System.out.println("Date utilisée: " + simulationDate);
-            System.out.println("Trips actifs trouvés: " + activeTripIds.size());
+            System.out.println("Trips actifs trouvés: " + activeTrips.cardinality());
         }
         
-        System.out.println("🔍 DEBUG Java - activeTripIds.size() = " + activeTripIds.size());
+        System.out.println("🔍 DEBUG Java - activeTrips.cardinality() = " + activeTrips.cardinality());
        
 
-        // 3. Traitement des stop_times (identique pour tous les cas)
-        List<String[]> stopTimesData = (List<String[]>) gtfsData.get("stop_times.txt");
-        IMap<String, Integer> stopTimesHeader = headerMaps.get("stop_times.txt");
-        
-        if (stopTimesData == null || stopTimesHeader == null) {
+        // 3. Traitement des stop_times (identique pour tous les cas), lus depuis la table compilée
+        if (stopTimes == null) {
             System.err.println("[ERROR] stop_times.txt data or headers are missing!");
             return;
         }
 
-        Integer tripIdIndex = findColumnIndex(stopTimesHeader, "trip_id");
-        Integer stopIdIndex = findColumnIndex(stopTimesHeader, "stop_id");
-        Integer departureTimeIndex = findColumnIndex(stopTimesHeader, "departure_time");
-        Integer stopSequenceIndex = findColumnIndex(stopTimesHeader, "stop_sequence");
-
-        if (tripIdIndex == null || stopIdIndex == null || departureTimeIndex == null || stopSequenceIndex == null) {
-            System.err.println("[ERROR] Required columns missing in stop_times.txt!");
-            return;
-        }
-
         // 4. Remplissage des trips et stops (avec filtrage conditionnel)
+        //    Les indices de trips/stops de la table sont ceux des dictionnaires : aucun hachage de String ici
         int totalAdded = 0;
-        int totalSkipped = 0;
         int totalMissingTrip = 0;
         int totalFilteredOut = 0; // ✅ NOUVEAU compteur
         
         int processedTrips = 0;
         int filteredTrips = 0;
 
-        for (String[] fields : stopTimesData) {
-            if (fields == null || fields.length <= Math.max(Math.max(tripIdIndex, stopIdIndex), Math.max(departureTimeIndex, stopSequenceIndex))) {
-                totalSkipped++;
-                continue;
-            }
-
-            try {
-                String tripId = fields[tripIdIndex].trim().replace("\"", "").replace("'", "");
-                
-                
-                
-                // ✅ FILTRAGE CONDITIONNEL selon la stratégie
-                if (!useAllTrips && !activeTripIds.contains(tripId)) {
-                    totalFilteredOut++;
-                    filteredTrips++;
-                    continue; // ✅ Skip seulement si on filtre par date      
-                }
-                processedTrips++; 
-                String stopId = fields[stopIdIndex].trim().replace("\"", "").replace("'", "");
-                String departureTime = fields[departureTimeIndex];
-                int stopSequence = Integer.parseInt(fields[stopSequenceIndex]);
+        int nbTrips = stopTimes.getTripCount();
+        for (int t = 0; t < nbTrips; t++) {
+            int start = stopTimes.getTripStart(t);
+            int end = stopTimes.getTripEnd(t);
 
-                TransportTrip trip = tripsMap.get(tripId);
-                if (trip == null) {
-                    totalMissingTrip++;
-                    continue;
-                }
-
-                trip.addStop(stopId);
-                trip.addStopDetail(stopId, departureTime, 0.0);
-                totalAdded++;
-
-                TransportStop stop = stopsMap.get(stopId);
-                if (stop != null) {
-                    int tripRouteType = trip.getRouteType();
-                    if (tripRouteType != -1 && stop.getRouteType() == -1) {
-                        stop.setRouteType(tripRouteType);
-                    }
-                    stop.addTripShapePair(tripId, trip.getShapeId()); // maintenant String → OK après 2) et 3)
-                }
+            // ✅ FILTRAGE CONDITIONNEL selon la stratégie
+            if (!useAllTrips && !activeTrips.get(t)) {
+                totalFilteredOut += end - start;
+                filteredTrips += end - start;
+                continue; // ✅ Skip seulement si on filtre par date
+            }
+            processedTrips += end - start;
 
-            } catch (Exception e) {
-                System.err.println("[ERROR] Échec traitement ligne : " + Arrays.toString(fields) + " → " + e.getMessage());
+            if (!attachTrip(t)) {
+                totalMissingTrip += end - start;
+                continue;
             }
+            totalAdded += end - start;
         }
         
         System.out.println("🔍 DEBUG stop_times boucle:");
@@ -991,598 +1516,576 @@ public class GTFS_reader extends GamaFile<IList<String>, String> {
         System.out.println("   → starting_date défini: " + startingDateDefini);
         if (!useAllTrips) {
             System.out.println("   → Date de simulation: " + simulationDate);
-            System.out.println("   → Trips actifs trouvés: " + activeTripIds.size());
+            System.out.println("   → Trips actifs trouvés: " + activeTrips.cardinality());
         }
         System.out.println("   → Stops ajoutés dans trips : " + totalAdded);
-        System.out.println("   → Lignes stop_times ignorées (incomplètes) : " + totalSkipped);
         System.out.println("   → tripId non trouvés dans tripsMap : " + totalMissingTrip);
         System.out.println("   → Trips filtrés par date : " + totalFilteredOut);
 
-        // 6. Création des departureTripsInfo (identique)
-        IMap<String, IList<GamaPair<String, String>>> departureTripsInfo = GamaMapFactory.create(Types.STRING, Types.LIST);
-        
-        // ✅ IMPORTANT : Utiliser la même logique de filtrage ici
-        Set<String> tripsToProcess = useAllTrips ? tripsMap.keySet() : activeTripIds;
-        
-        for (String tripId : tripsToProcess) {
-            TransportTrip trip = tripsMap.get(tripId);
-            if (trip == null) continue;
-            
-            IList<String> stopsInOrder = trip.getStopsInOrder();
-            IList<IMap<String, Object>> stopDetails = trip.getStopDetails();
-            IList<GamaPair<String, String>> stopPairs = GamaListFactory.create(Types.PAIR);
+        // 6. Stops de départ et trips retenus, triés par heure de départ dans chaque stop
+        int[][] departures = selectDepartures(activeTrips);
+        int nbFirstStops = 0;
+        for (int t = activeTrips.nextSetBit(0); t >= 0; t = activeTrips.nextSetBit(t + 1)) {
+            if (t < tripsByIndex.length && tripsByIndex[t] != null && t < stopTimes.getTripCount()) nbFirstStops++;
+        }
 
-            if (stopsInOrder.isEmpty() || stopDetails.size() != stopsInOrder.size()) continue;
+        // 7. Affectation dans chaque stop de départ
+        for (int s = 0; s < departures.length; s++) {
+            if (departures[s].length == 0) continue;
+            TransportStop stop = stopsByIndex[s];
+            if (stop == null) continue;
+            stop.ensureDepartureTripsInfo();
+            for (int t : departures[s]) {
+                stop.addStopPairs(stopTimes.getTripId(t), stopPairsOf(t));
+            }
+            stop.setTripNumber(stop.getDepartureTripsInfo().size());
+        }
+        departuresOfStop = departures;
+        currentActiveTrips = activeTrips;
+        currentServiceDay = useAllTrips ? null : simulationDate;
+        departureSchedule = null;
+        tripIntervalIndex = null;
+        stopPassageIndex = null;
 
-            for (int i = 0; i < stopsInOrder.size(); i++) {
-                String stopId = stopsInOrder.get(i);
-                String departureTime = stopDetails.get(i).get("departureTime").toString();
-                String departureInSeconds = convertTimeToSeconds(departureTime);
-                stopPairs.add(new GamaPair<>(stopId, departureInSeconds, Types.STRING, Types.STRING));
+     // 8. Résumé final
+     int nbStopsAvecTrips = 0;
+     for (TransportStop stop : stopsMap.values()) {
+         if (stop.getDepartureTripsInfo() != null && !stop.getDepartureTripsInfo().isEmpty()) {
+             nbStopsAvecTrips++;
+         }
+     }
+     System.out.println("Nombre de stops avec departureTripsInfo non vide : " + nbStopsAvecTrips);
+     System.out.println("Nombre de trips au total dans tripsMap : " + tripsMap.size());
+     System.out.println("Nombre de stops de départ identifiés (stop_sequence=1) : " + nbFirstStops);
+     System.out.println("✅ computeDepartureInfo completed successfully.");
+ }
+
+
+    /**
+     * Adds the stops of a trip (stop list and details of the trip, served trips and route type of the stops).
+     * A trip is attached once, the first service day it runs.
+     *
+     * @return false if the trip is not in trips.txt.
+     */
+    private boolean attachTrip(int t) {
+        TransportTrip trip = tripsByIndex[t];
+        if (trip == null) return false;
+        if (attachedTrips.get(t)) return true;
+        attachedTrips.set(t);
+        int tripRouteType = trip.getRouteType();
+        for (int row = stopTimes.getTripStart(t); row < stopTimes.getTripEnd(t); row++) {
+            String stopId = stopTimes.getStopId(row);
+            float dist = stopTimes.getShapeDistTraveled(row);
+            trip.addStop(stopId, stopTimes.getDepartureTime(row), Float.isNaN(dist) ? 0.0 : dist);
+
+            TransportStop stop = stopsByIndex[stopTimes.getStopIndex(row)];
+            if (stop != null) {
+                if (tripRouteType != -1 && stop.getRouteType() == -1) {
+                    stop.setRouteType(tripRouteType);
+                }
+                stop.addServedTrip(t);
             }
-            departureTripsInfo.put(tripId, stopPairs);
         }
+        trip.trimStops();
+        return true;
+    }
 
+    /**
+     * Selects the trips leaving from each stop. The rows of a trip are sorted by stop_sequence, so its
+     * departure is its first row (the earliest one if several rows share the first sequence). A trip whose
+     * (departure stop, departure time, stops) was already seen is skipped.
+     *
+     * @return For each stop index, the trips leaving from it sorted by departure time then trip index.
+     */
+    private int[][] selectDepartures(BitSet activeTrips) {
+        int nbTrips = stopTimes.getTripCount();
+        int[] firstRowOfTrip = new int[nbTrips];
+        Set<IntSequence> seenTripSignatures = new HashSet<>();
+        int[] keptTrips = new int[nbTrips];
+        int nbKeptTrips = 0;
+
+        TripPatterns patterns = stopTimes.getTripPatterns();
+        for (int t = activeTrips.nextSetBit(0); t >= 0 && t < nbTrips; t = activeTrips.nextSetBit(t + 1)) {
+            if (tripsByIndex[t] == null) continue;
+            int firstRow = stopTimes.getFirstRow(t);
+            firstRowOfTrip[t] = firstRow;
+
+            // Signature pour éviter les doublons : pattern (suite des stops), stop de départ, heure de départ
+            IntSequence signature = new IntSequence(patterns.getPatternOf(t), stopTimes.getStopIndex(firstRow),
+                    Math.max(0, stopTimes.getDepartureTime(firstRow)));
+            if (!seenTripSignatures.add(signature)) continue;
+            keptTrips[nbKeptTrips++] = t;
+        }
 
-     // 6. Détermination des stops de départ : prendre le plus petit stop_sequence par trip
-        Map<String, List<String>> stopToTripIds = new HashMap<>();
-        Set<String> seenTripSignatures = new HashSet<>();
+        // tri par paquets sur le stop de départ, puis tri (heure, trip) dans chaque paquet
+        int nbStops = stopTimes.getStopCount();
+        int[] stopStart = new int[nbStops + 1];
+        for (int k = 0; k < nbKeptTrips; k++) stopStart[stopTimes.getStopIndex(firstRowOfTrip[keptTrips[k]]) + 1]++;
+        for (int s = 0; s < nbStops; s++) stopStart[s + 1] += stopStart[s];
+        long[] byStop = new long[nbKeptTrips];
+        int[] cursor = Arrays.copyOf(stopStart, nbStops);
+        for (int k = 0; k < nbKeptTrips; k++) {
+            int t = keptTrips[k];
+            int firstRow = firstRowOfTrip[t];
+            long departure = Math.max(0, stopTimes.getDepartureTime(firstRow));
+            byStop[cursor[stopTimes.getStopIndex(firstRow)]++] = (departure << 32) | t;
+        }
+        int[][] departures = new int[nbStops][];
+        for (int s = 0; s < nbStops; s++) {
+            Arrays.sort(byStop, stopStart[s], stopStart[s + 1]);
+            departures[s] = new int[stopStart[s + 1] - stopStart[s]];
+            for (int k = stopStart[s]; k < stopStart[s + 1]; k++) departures[s][k - stopStart[s]] = (int) byStop[k];
+        }
+        return departures;
+    }
 
-        Map<String, String> tripToFirstStop = new HashMap<>();
-        Map<String, String> tripToFirstStopTime = new HashMap<>();
-        Map<String, Integer> tripToMinSeq = new HashMap<>();
+    /** @return The (stop_id, departure time in seconds) pairs of a trip: Strings only here, at the GAML boundary. */
+    private IList<GamaPair<String, Integer>> stopPairsOf(int t) {
+        IList<GamaPair<String, Integer>> stopPairs = GamaListFactory.create(Types.PAIR);
+        for (int row = stopTimes.getTripStart(t); row < stopTimes.getTripEnd(t); row++) {
+            int departure = Math.max(0, stopTimes.getDepartureTime(row));
+            stopPairs.add(new GamaPair<>(stopTimes.getStopId(row), departure, Types.STRING, Types.INT));
+        }
+        return stopPairs;
+    }
 
-        int tripsFiltresDansStopsDepart = 0;
-        int tripsTraitesDansStopsDepart = 0;
+    /**
+     * @return The departures of the current service day sorted by time, built on first use and
+     *         rebuilt after switchServiceDay.
+     */
+    public synchronized DepartureSchedule getDepartureSchedule() {
+        if (departureSchedule == null) {
+            departureSchedule = stopTimes == null ? new DepartureSchedule(new int[0][], null)
+                    : new DepartureSchedule(departuresOfStop, stopTimes);
+            System.out.println("[INFO] " + departureSchedule);
+        }
+        return departureSchedule;
+    }
 
-        for (String[] fields : stopTimesData) {
-            if (fields == null || fields.length <= Math.max(Math.max(tripIdIndex, stopIdIndex),
-                                                            Math.max(departureTimeIndex, stopSequenceIndex))) {
-                continue;
-            }
+    /**
+     * @return The time (seconds) a trip reaches its last stop: arrival time of its last row, or its
+     *         departure time when the arrival time is missing.
+     */
+    public int getTripEndTime(int t) {
+        int last = stopTimes.getTripEnd(t) - 1;
+        int arrival = stopTimes.getArrivalTime(last);
+        return Math.max(0, arrival != StopTimesTable.NO_TIME ? arrival : stopTimes.getDepartureTime(last));
+    }
 
-            try {
-                String tripId = fields[tripIdIndex].trim().replace("\"","").replace("'","");
-                if (!useAllTrips && !activeTripIds.contains(tripId)) { tripsFiltresDansStopsDepart++; continue; }
-                if (useAllTrips && !tripsMap.containsKey(tripId))     { tripsFiltresDansStopsDepart++; continue; }
+    /**
+     * @return The [start, end] intervals of the trips of the current service day, built on first use and
+     *         rebuilt after switchServiceDay. Every active trip is included, also the duplicates left out of
+     *         the departure schedule (see getStopPassageIndex).
+     */
+    public synchronized TripIntervalIndex getTripIntervalIndex() {
+        if (tripIntervalIndex == null) {
+            tripIntervalIndex = buildTripIntervalIndex(currentActiveTrips);
+            System.out.println("[INFO] " + tripIntervalIndex);
+        }
+        return tripIntervalIndex;
+    }
 
-                String stopId = fields[stopIdIndex].trim().replace("\"","").replace("'","");
-                String departureTime = fields[departureTimeIndex];
-                int seq;
-                try {
-                    seq = Integer.parseInt(fields[stopSequenceIndex].trim());
-                } catch (Exception ex) {
-                    // si stop_sequence manquant ou non numérique, on ignore cette ligne
-                    continue;
-                }
+    /**
+     * @return The trip patterns of the timetable (trips grouped by stop sequence, stored as a start time
+     *         and shared offset vectors), or null without stop_times.txt. They hold the times of the
+     *         stop_times table: the trip start/end times, the trip states and the stop passages are read
+     *         from them.
+     */
+    public TripPatterns getTripPatterns() {
+        return stopTimes != null ? stopTimes.getTripPatterns() : null;
+    }
 
-                tripsTraitesDansStopsDepart++;
-
-                Integer curMin = tripToMinSeq.get(tripId);
-                if (curMin == null || seq < curMin) {
-                    // nouveau minimum
-                    tripToMinSeq.put(tripId, seq);
-                    tripToFirstStop.put(tripId, stopId);
-                    tripToFirstStopTime.put(tripId, convertTimeToSeconds(departureTime));
-                } else if (curMin != null && seq == curMin) {
-                    // égalité : garder le départ le plus tôt
-                    String curTime = tripToFirstStopTime.get(tripId);
-                    String newTime = convertTimeToSeconds(departureTime);
-                    if (curTime == null || Integer.parseInt(newTime) < Integer.parseInt(curTime)) {
-                        tripToFirstStop.put(tripId, stopId);
-                        tripToFirstStopTime.put(tripId, newTime);
-                    }
-                }
+    /**
+     * @return The passages of the trips of the current service day at every stop, built on first use and
+     *         rebuilt after switchServiceDay. Every active trip is included, also the duplicates left out of
+     *         the departure schedule (same stops and same departure time as another trip).
+     */
+    public synchronized StopPassageIndex getStopPassageIndex() {
+        if (stopPassageIndex == null) {
+            if (stopTimes == null) {
+                stopPassageIndex = new StopPassageIndex(new int[0], new StopTimesTable.Builder(0).build());
+            } else {
+                stopPassageIndex = new StopPassageIndex(tripsWithStopTimes(currentActiveTrips), stopTimes);
+            }
+            System.out.println("[INFO] " + stopPassageIndex);
+        }
+        return stopPassageIndex;
+    }
 
-            } catch (Exception e) {
-                // on ignore les erreurs de parsing ici
+    /**
+     * @return The [start, end] intervals of the trips of a service day (the current one when the date is
+     *         null or the current service day), every trip running that day included. The indexes of the
+     *         last MAX_OTHER_DAY_INDEXES other days asked for are kept, and always the one of the day
+     *         before the current service day.
+     */
+    public synchronized TripIntervalIndex getTripIntervalIndex(LocalDate date) {
+        if (date == null || date.equals(currentServiceDay) || stopTimes == null) return getTripIntervalIndex();
+        TripIntervalIndex index = otherDayIndexes.get(date);
+        if (index == null) {
+            if (tripDictionary == null) buildIdDictionaries();
+            index = buildTripIntervalIndex(getActiveTripIndexesForDate(date));
+            otherDayIndexes.put(date, index);
+            LocalDate previousDay = currentServiceDay != null ? currentServiceDay.minusDays(1) : null;
+            Iterator<LocalDate> days = otherDayIndexes.keySet().iterator();
+            while (otherDayIndexes.size() > MAX_OTHER_DAY_INDEXES && days.hasNext()) {
+                LocalDate day = days.next();
+                if (!day.equals(previousDay) && !day.equals(date)) days.remove();
             }
         }
+        return index;
+    }
 
-        System.out.println("🔍 DEBUG stops de départ:");
-        System.out.println("   → Trips traités pour stops départ: " + tripsTraitesDansStopsDepart);
-        System.out.println("   → Trips filtrés pour stops départ: " + tripsFiltresDansStopsDepart);
-        System.out.println("   → Stops de départ identifiés: " + tripToFirstStop.size());
+    private TripIntervalIndex buildTripIntervalIndex(BitSet activeTrips) {
+        if (stopTimes == null) return new TripIntervalIndex(new int[0], new int[0], new int[0]);
+        int[] trips = tripsWithStopTimes(activeTrips);
+        int[] starts = new int[trips.length];
+        int[] ends = new int[trips.length];
+        for (int k = 0; k < trips.length; k++) {
+            starts[k] = getTripStartTime(trips[k]);
+            ends[k] = getTripEndTime(trips[k]);
+        }
+        return new TripIntervalIndex(trips, starts, ends);
+    }
 
+    /** @return The trips of the set having stop_times rows, in index order. */
+    private int[] tripsWithStopTimes(BitSet activeTrips) {
+        int[] trips = new int[activeTrips.cardinality()];
+        int n = 0;
+        for (int t = activeTrips.nextSetBit(0); t >= 0 && t < stopTimes.getTripCount(); t = activeTrips.nextSetBit(t + 1)) {
+            trips[n++] = t;
+        }
+        return Arrays.copyOf(trips, n);
+    }
 
-     // Utiliser les vrais stops de départ pour créer stopToTripIds
-     for (String tripId : departureTripsInfo.keySet()) {
-         IList<GamaPair<String, String>> stopPairs = departureTripsInfo.get(tripId);
-         if (stopPairs == null || stopPairs.isEmpty()) continue;
+    /** @return The trips of the current service day running at the time (see getTripsRunningBetween). */
+    public synchronized int[] getTripsRunningAt(int time) {
+        return getTripsRunningBetween(currentServiceDay, time, time);
+    }
 
-         // Utiliser le stop avec stop_sequence = 1 si disponible
-         String firstStopId = tripToFirstStop.get(tripId);
-         String departureTime = tripToFirstStopTime.get(tripId);
-         
-         // Fallback : si pas de stop_sequence = 1, utiliser le premier dans la liste
-         if (firstStopId == null) {
-             firstStopId = stopPairs.get(0).key;
-             departureTime = stopPairs.get(0).value;
-             System.out.println("[WARNING] Trip " + tripId + " n'a pas de stop_sequence=1, utilise le premier stop rencontré: " + firstStopId);
-         }
+    /**
+     * Trips running during a window of a service day: trips whose [first departure, last arrival] overlaps
+     * [from, to]. Times are in seconds since the start of the day; when to < from the window crosses
+     * midnight and ends at to + 24h. Before 24:00:00, the trips of the previous service day still running
+     * after midnight (GTFS times after 24:00:00) are included. When the date is null (all the trips are
+     * used), the trips of the current day stand for those of the previous day.
+     *
+     * @return The trip indices, each once: trips of the day sorted by start time, then those of the previous day.
+     */
+    public synchronized int[] getTripsRunningBetween(LocalDate date, int from, int to) {
+        if (to < from) to += 86400;
+        int[] running = getTripIntervalIndex(date).overlapping(from, to);
+        if (from >= 86400) return running;
+        TripIntervalIndex previousDay = date != null ? getTripIntervalIndex(date.minusDays(1)) : getTripIntervalIndex();
+        int[] late = previousDay.overlapping(from + 86400, to + 86400);
+        if (late.length == 0) return running;
+        BitSet seen = new BitSet();
+        int[] all = Arrays.copyOf(running, running.length + late.length);
+        int n = running.length;
+        for (int t : running) seen.set(t);
+        for (int t : late) {
+            if (!seen.get(t)) all[n++] = t;
+        }
+        return Arrays.copyOf(all, n);
+    }
 
-         // Créer la signature pour éviter les doublons
-         StringBuilder stopSequence = new StringBuilder();
-         for (GamaPair<String, String> pair : stopPairs) {
-             stopSequence.append(pair.key).append(";");
-         }
-         String signature = firstStopId + "_" + departureTime + "_" + stopSequence;
+    /**
+     * Position of a trip at a time, from its timetable: the last stop reached, and the progress towards
+     * the next stop (linear in time between the departure from a stop and the arrival at the next one).
+     * The location is interpolated along the shape of the trip between the projections of the two stops,
+     * or on the straight line between them when the trip has no shape geometry.
+     *
+     * @param scope Scope used to project the shape of the trip when it is not projected yet.
+     * @param time Seconds since the start of the service day (add 24h for a trip running after midnight).
+     * @return A map with the keys of the vehicles of the transit_dispatcher (trip_id, route_id, route_type,
+     *         shape_id, departureStopsInfo, current_stop_index, location) and next_stop (agent or nil),
+     *         moving (false while waiting at a stop), segment_progress and shape_progress (in [0, 1]).
+     */
+    public synchronized IMap<String, Object> getTripStateAt(IScope scope, int t, int time) {
+        @SuppressWarnings("unchecked")
+        IMap<String, Object> state = GamaMapFactory.create(Types.STRING, Types.NO_TYPE);
+        TransportTrip trip = getTripByIndex(t);
+        IList<GamaPair<IAgent, Integer>> stopPairs = getAgentStopPairs(t);
+        state.put("trip_id", stopTimes.getTripId(t));
+        if (trip != null) {
+            state.put("route_id", trip.getRouteId());
+            state.put("route_type", trip.getRouteType());
+            state.put("shape_id", trip.getShapeId());
+        }
+        state.put("departureStopsInfo", stopPairs);
+
+        // 1. Dernier arrêt atteint (les arrêts sans horaire sont ignorés) et prochain arrêt horodaté
+        int start = stopTimes.getTripStart(t);
+        int end = stopTimes.getTripEnd(t);
+        int reached = start;
+        for (int row = start + 1; row < end; row++) {
+            int arrival = timeOf(row, true);
+            if (arrival == StopTimesTable.NO_TIME) continue;
+            if (arrival > time) break;
+            reached = row;
+        }
+        int next = -1;
+        for (int row = reached + 1; row < end && next < 0; row++) {
+            if (timeOf(row, true) != StopTimesTable.NO_TIME) next = row;
+        }
+        int leave = timeOf(reached, false);
+        boolean moving = next >= 0 && leave != StopTimesTable.NO_TIME && leave <= time;
+        double segmentProgress = 0;
+        if (moving) {
+            int arrive = timeOf(next, true);
+            segmentProgress = arrive > leave ? Math.min(1.0, (time - leave) / (double) (arrive - leave)) : 1.0;
+        } else if (next < 0) {
+            segmentProgress = 1.0;
+        }
 
-         if (seenTripSignatures.contains(signature)) continue;
-         seenTripSignatures.add(signature);
-         stopToTripIds.computeIfAbsent(firstStopId, k -> new ArrayList<>()).add(tripId);
-     }
+        // 2. Indice dans departureStopsInfo (arrêts avec agent) et prochain arrêt
+        int stopIndex = -1;
+        for (int row = start; row <= reached; row++) {
+            TransportStop stop = stopsByIndex[stopTimes.getStopIndex(row)];
+            if (stop != null && stop.getAgent() != null) stopIndex++;
+        }
+        state.put("current_stop_index", Math.max(0, stopIndex));
+        TransportStop nextStop = next >= 0 ? stopsByIndex[stopTimes.getStopIndex(next)] : null;
+        state.put("next_stop", nextStop != null ? nextStop.getAgent() : null);
+        state.put("moving", moving);
+        state.put("segment_progress", segmentProgress);
+
+        // 3. Position : le long du shape entre les projections des deux arrêts, sinon en ligne droite
+        TransportStop from = stopsByIndex[stopTimes.getStopIndex(reached)];
+        GamaPoint fromLocation = from != null ? from.getLocation() : null;
+        GamaPoint toLocation = nextStop != null ? nextStop.getLocation() : fromLocation;
+        LengthIndexedLine line = trip != null ? shapeLine(scope, trip.getShapeId()) : null;
+        double shapeProgress = next < 0 || end - start < 2 ? 1.0
+                : (reached - start + segmentProgress * (next - reached)) / (end - start - 1);
+        GamaPoint location = fromLocation;
+        if (fromLocation != null && toLocation != null) {
+            double a = line != null ? line.project(new Coordinate(fromLocation.getX(), fromLocation.getY())) : 0;
+            double b = line != null ? line.indexOfAfter(new Coordinate(toLocation.getX(), toLocation.getY()), a) : 0;
+            if (line != null && b >= a && line.getEndIndex() > 0) {
+                double position = a + segmentProgress * (b - a);
+                Coordinate c = line.extractPoint(position);
+                location = new GamaPoint(c.x, c.y);
+                shapeProgress = position / line.getEndIndex();
+            } else {
+                location = new GamaPoint(fromLocation.getX() + segmentProgress * (toLocation.getX() - fromLocation.getX()),
+                        fromLocation.getY() + segmentProgress * (toLocation.getY() - fromLocation.getY()));
+            }
+        }
+        state.put("location", location);
+        state.put("shape_progress", shapeProgress);
+        return state;
+    }
 
-     // 7. Affectation dans chaque stop + tri + comptage
-     for (Map.Entry<String, List<String>> entry : stopToTripIds.entrySet()) {
-         String stopId = entry.getKey();
-         List<String> tripIds = entry.getValue();
-
-         tripIds.sort((id1, id2) -> {
-             String t1 = tripToFirstStopTime.getOrDefault(id1, departureTripsInfo.get(id1).get(0).value);
-             String t2 = tripToFirstStopTime.getOrDefault(id2, departureTripsInfo.get(id2).get(0).value);
-             return Integer.compare(Integer.parseInt(t1), Integer.parseInt(t2));
-         });
-
-         TransportStop stop = stopsMap.get(stopId);
-         if (stop == null) continue;
-         stop.ensureDepartureTripsInfo();
-         for (String tripId : tripIds) {
-             IList<GamaPair<String, String>> pairs = departureTripsInfo.get(tripId);
-             stop.addStopPairs(tripId, pairs);
-         }
-         stop.setTripNumber(stop.getDepartureTripsInfo().size());
-     }
+    /** @return The arrival (or departure) time of a stop_times row, the other one when missing, or NO_TIME. */
+    private int timeOf(int row, boolean arrival) {
+        int first = arrival ? stopTimes.getArrivalTime(row) : stopTimes.getDepartureTime(row);
+        return first != StopTimesTable.NO_TIME ? first : (arrival ? stopTimes.getDepartureTime(row) : stopTimes.getArrivalTime(row));
+    }
 
-     // 8. Résumé final
-     int nbStopsAvecTrips = 0;
-     for (TransportStop stop : stopsMap.values()) {
-         if (stop.getDepartureTripsInfo() != null && !stop.getDepartureTripsInfo().isEmpty()) {
-             nbStopsAvecTrips++;
-         }
-     }
-     System.out.println("Nombre de stops avec departureTripsInfo non vide : " + nbStopsAvecTrips);
-     System.out.println("Nombre de trips au total dans tripsMap : " + tripsMap.size());
-     System.out.println("Nombre de stops de départ identifiés (stop_sequence=1) : " + tripToFirstStop.size());
-     System.out.println("✅ computeDepartureInfo completed successfully.");
- }
+    /** @return The geometry of a shape indexed by length, or null if the shape has less than 2 points. */
+    private LengthIndexedLine shapeLine(IScope scope, String shapeId) {
+        if (shapeId == null || shapesMap == null) return null;
+        LengthIndexedLine line = shapeLines.get(shapeId);
+        if (line != null) return line;
+        TransportShape shape = shapesMap.get(shapeId); // shape fictif : pas encore construit, ligne droite
+        if (shape != null && shape.getPointCount() > 1) {
+            IList<GamaPoint> points = shape.getPoints(scope);
+            Coordinate[] coords = new Coordinate[points.size()];
+            for (int i = 0; i < coords.length; i++) {
+                GamaPoint p = points.get(i);
+                coords[i] = new Coordinate(p.getX(), p.getY());
+            }
+            line = new LengthIndexedLine(GEOMETRY_FACTORY.createLineString(coords));
+            shapeLines.put(shapeId, line);
+        }
+        return line;
+    }
 
+    /** @return The time (seconds) a trip leaves its first stop. */
+    public int getTripStartTime(int t) {
+        return Math.max(0, stopTimes.getDepartureTime(stopTimes.getFirstRow(t)));
+    }
 
- private Set<String> getActiveTripIdsForDate(IScope scope, LocalDate date) {
-	    System.out.println("\n=== DÉBUT getActiveTripIdsForDate ===");
-	    System.out.println("🔍 Recherche trips actifs pour la date: " + date);
-	    System.out.println("🔍 Jour de la semaine: " + date.getDayOfWeek());
-	    System.out.println("🔍 Format GTFS: " + date.format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd")));
-	    
-	    Set<String> validTripIds = new HashSet<>();
-	    Map<String, String> tripIdToServiceId = new HashMap<>();
-
-	    // 1. Construction de la map trip -> service_id
-	    System.out.println("\n--- Phase 1: Lecture trips.txt ---");
-	    List<String[]> tripsData = (List<String[]>) gtfsData.get("trips.txt");
-	    IMap<String, Integer> tripsHeader = headerMaps.get("trips.txt");
-
-	    if (tripsData == null || tripsHeader == null) {
-	        System.err.println("❌ [ERROR] trips.txt data or headers are missing!");
-	        return validTripIds;
-	    }
-
-	    Integer tripIdIdx = findColumnIndex(tripsHeader, "trip_id");
-	    Integer serviceIdIdx = findColumnIndex(tripsHeader, "service_id");
-	    if (tripIdIdx == null || serviceIdIdx == null) {
-	        System.err.println("❌ [ERROR] trip_id or service_id column missing in trips.txt!");
-	        System.err.println("   → trip_id index: " + tripIdIdx);
-	        System.err.println("   → service_id index: " + serviceIdIdx);
-	        return validTripIds;
-	    }
-
-	    int tripsProcessed = 0;
-	    int tripsIgnored = 0;
-	    for (String[] fields : tripsData) {
-	        // Ignore les lignes vides ou mal formées
-	        if (fields.length > Math.max(tripIdIdx, serviceIdIdx)) {
-	            tripIdToServiceId.put(fields[tripIdIdx].trim().replace("\"", ""), fields[serviceIdIdx].trim().replace("\"", ""));
-	            tripsProcessed++;
-	        } else {
-	            tripsIgnored++;
-	        }
-	    }
-	    System.out.println("📊 trips.txt traitement:");
-	    System.out.println("   → Trips traités: " + tripsProcessed);
-	    System.out.println("   → Trips ignorés: " + tripsIgnored);
-	    System.out.println("   → Services uniques: " + tripIdToServiceId.values().stream().distinct().count());
-
-	    // 2. Vérification des fichiers calendrier
-	    System.out.println("\n--- Phase 2: Vérification fichiers calendrier ---");
-	    List<String[]> calendarData = (List<String[]>) gtfsData.get("calendar.txt");
-	    List<String[]> calendarDatesData = (List<String[]>) gtfsData.get("calendar_dates.txt");
-	    boolean hasCalendar = (calendarData != null && !calendarData.isEmpty());
-	    boolean hasCalendarDates = (calendarDatesData != null && !calendarDatesData.isEmpty());
-
-	    System.out.println("📊 Disponibilité fichiers:");
-	    System.out.println("   → calendar.txt: " + (hasCalendar ? "✅ (" + calendarData.size() + " lignes)" : "❌"));
-	    System.out.println("   → calendar_dates.txt: " + (hasCalendarDates ? "✅ (" + calendarDatesData.size() + " lignes)" : "❌"));
-
-	    Set<String> activeServiceIds = new HashSet<>();
-	    java.time.format.DateTimeFormatter formatter = java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd");
-	    String dayOfWeek = date.getDayOfWeek().toString().toLowerCase();
-	    String dateString = date.format(formatter);
-
-	    System.out.println("🔍 Paramètres recherche:");
-	    System.out.println("   → Date: " + dateString);
-	    System.out.println("   → Jour: " + dayOfWeek);
-
-	    // 3. Traitement calendar.txt
-	    if (hasCalendar) {
-	        System.out.println("\n--- Phase 3: Traitement calendar.txt ---");
-	        IMap<String, Integer> calendarHeader = headerMaps.get("calendar.txt");
-	        if (calendarHeader == null) {
-	            System.err.println("❌ [ERROR] calendar.txt headers missing!");
-	        } else {
-	            try {
-	                Integer serviceIdIdxCal = findColumnIndex(calendarHeader, "service_id");
-	                Integer startIdx = findColumnIndex(calendarHeader, "start_date");
-	                Integer endIdx = findColumnIndex(calendarHeader, "end_date");
-	                Integer dayIdx = findColumnIndex(calendarHeader, dayOfWeek);
-	                
-	                System.out.println("📋 Index des colonnes:");
-	                System.out.println("   → service_id: " + serviceIdIdxCal);
-	                System.out.println("   → start_date: " + startIdx);
-	                System.out.println("   → end_date: " + endIdx);
-	                System.out.println("   → " + dayOfWeek + ": " + dayIdx);
-	                
-	                if (serviceIdIdxCal == null || startIdx == null || endIdx == null || dayIdx == null) {
-	                    System.err.println("❌ [ERROR] Some required columns are missing in calendar.txt!");
-	                } else {
-	                    int servicesActifs = 0;
-	                    int servicesInactifs = 0;
-	                    int servicesHorsPeriode = 0;
-	                    int servicesJourInactif = 0;
-	                    
-	                    for (String[] fields : calendarData) {
-	                        if (fields.length <= Math.max(Math.max(serviceIdIdxCal, startIdx), Math.max(endIdx, dayIdx))) continue;
-	                        
-	                        try {
-	                            String serviceId = fields[serviceIdIdxCal].trim().replace("\"", "");
-	                            LocalDate start = LocalDate.parse(fields[startIdx], formatter);
-	                            LocalDate end = LocalDate.parse(fields[endIdx], formatter);
-	                            boolean dayActive = fields[dayIdx].equals("1");
-	                            boolean inPeriod = !date.isBefore(start) && !date.isAfter(end);
-	                            boolean runsToday = dayActive && inPeriod;
-	                            
-	                            if (runsToday) {
-	                                activeServiceIds.add(serviceId);
-	                                servicesActifs++;
-	                            } else {
-	                                servicesInactifs++;
-	                                if (!inPeriod) servicesHorsPeriode++;
-	                                if (!dayActive) servicesJourInactif++;
-	                            }
-	                        } catch (Exception e) {
-	                            System.err.println("❌ Erreur ligne calendar.txt: " + Arrays.toString(fields) + " -> " + e.getMessage());
-	                        }
-	                    }
-	                    
-	                    System.out.println("📊 Résultats calendar.txt pour " + date + ":");
-	                    System.out.println("   → Services actifs: " + servicesActifs);
-	                    System.out.println("   → Services inactifs: " + servicesInactifs);
-	                    System.out.println("     ↳ Hors période: " + servicesHorsPeriode);
-	                    System.out.println("     ↳ Jour inactif: " + servicesJourInactif);
-	                }
-	            } catch (Exception e) {
-	                System.err.println("❌ [ERROR] Processing calendar.txt failed: " + e.getMessage());
-	                e.printStackTrace();
-	            }
-	        }
-	    }
-
-	    // 4. Traitement calendar_dates.txt
-	    if (hasCalendarDates) {
-	        System.out.println("\n--- Phase 4: Traitement calendar_dates.txt ---");
-	        IMap<String, Integer> calDatesHeader = headerMaps.get("calendar_dates.txt");
-	        if (calDatesHeader == null) {
-	            System.err.println("❌ [ERROR] calendar_dates.txt headers missing!");
-	        } else {
-	            try {
-	                Integer serviceIdIdxCal = findColumnIndex(calDatesHeader, "service_id");
-	                Integer dateIdx = findColumnIndex(calDatesHeader, "date");
-	                Integer exceptionTypeIdx = findColumnIndex(calDatesHeader, "exception_type");
-	                
-	                if (serviceIdIdxCal == null || dateIdx == null || exceptionTypeIdx == null) {
-	                    System.err.println("❌ [ERROR] Some required columns are missing in calendar_dates.txt!");
-	                } else {
-	                    int ajouts = 0;
-	                    int suppressions = 0;
-	                    int datesNonCorrespondantes = 0;
-	                    
-	                    for (String[] fields : calendarDatesData) {
-	                        if (fields.length <= Math.max(Math.max(serviceIdIdxCal, dateIdx), exceptionTypeIdx)) continue;
-	                        
-	                        try {
-	                            String serviceId = fields[serviceIdIdxCal].trim().replace("\"", "");
-	                            LocalDate exceptionDate = LocalDate.parse(fields[dateIdx], formatter);
-	                            int exceptionType = Integer.parseInt(fields[exceptionTypeIdx]);
-	                            
-	                            if (exceptionDate.equals(date)) {
-	                                if (exceptionType == 1) {
-	                                    activeServiceIds.add(serviceId);
-	                                    ajouts++;
-	                
-	                                }
-	                                if (exceptionType == 2) {
-	                                    boolean wasActive = activeServiceIds.remove(serviceId);
-	                                    suppressions++;
-	                                    System.out.println("➖ Service supprimé: " + serviceId + " (exception_type=2, était actif: " + wasActive + ")");
-	                                }
-	                            } else {
-	                                datesNonCorrespondantes++;
-	                            }
-	                        } catch (Exception e) {
-	                            System.err.println("❌ Erreur ligne calendar_dates.txt: " + Arrays.toString(fields) + " -> " + e.getMessage());
-	                        }
-	                    }
-	                    
-	                    System.out.println("📊 Résultats calendar_dates.txt:");
-	                    System.out.println("   → Services ajoutés (type=1): " + ajouts);
-	                    System.out.println("   → Services supprimés (type=2): " + suppressions);
-	                    System.out.println("   → Dates non correspondantes: " + datesNonCorrespondantes);
-	                }
-	            } catch (Exception e) {
-	                System.err.println("❌ [ERROR] Processing calendar_dates.txt failed: " + e.getMessage());
-	                e.printStackTrace();
-	            }
-	        }
-	    }
-
-	    // 5. Conversion services -> trips
-	    System.out.println("\n--- Phase 5: Conversion services -> trips ---");
-	    System.out.println("📊 Services actifs identifiés: " + activeServiceIds.size());
-	    if (activeServiceIds.size() <= 10) {
-	        System.out.println("🔍 Services actifs: " + activeServiceIds);
-	    }
-
-	    int tripsActifs = 0;
-	    for (Map.Entry<String, String> e : tripIdToServiceId.entrySet()) {
-	        if (activeServiceIds.contains(e.getValue())) {
-	            validTripIds.add(e.getKey());
-	            tripsActifs++;
-	        }
-	    }
-	    
-	    System.out.println("📊 Conversion résultat:");
-	    System.out.println("   → Trips actifs trouvés: " + tripsActifs);
-
-	    // 6. FALLBACK SI AUCUN TRIP
-	    if (validTripIds.isEmpty()) {
-	        System.err.println("\n⚠️ [WARNING] AUCUN TRIP ACTIF pour la date: " + date);
-	        System.out.println("🔄 [FALLBACK CAS 2] Recherche d'un jour équivalent dans GTFS...");
-	        
-	        LocalDate altDate = findFirstDateWithSameWeekDay(date);
-	        if (altDate != null && !altDate.equals(date)) {
-	            System.out.println("✅ [FALLBACK CAS 2] Jour équivalent trouvé: " + altDate);
-	            Set<String> fallbackTrips = getActiveTripIdsForDate(scope, altDate);
-	            System.out.println("✅ [FALLBACK CAS 2] Trips récupérés: " + fallbackTrips.size());
-	            return fallbackTrips;
-	        } else {
-	            System.err.println("❌ [FALLBACK CAS 2] No matching weekday found in GTFS.");
-	            // ✅ NE PAS faire de fallback vers tous les trips ici
-	            // Laissez le CAS 3 être géré dans computeDepartureInfo
-	        }
-	    }
-	    
-	    return validTripIds;
-	}
-
-	private LocalDate findFirstDateWithSameWeekDay(LocalDate wantedDate) {
-	    System.out.println("\n🔍 findFirstDateWithSameWeekDay appelée...");
-	    System.out.println("🔍 Date recherchée: " + wantedDate + " (" + wantedDate.getDayOfWeek() + ")");
-	    
-	    List<LocalDate> allDates = new ArrayList<>();
-	    java.time.format.DateTimeFormatter formatter = java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd");
-	    
-	    // calendar.txt
-	    System.out.println("\n📅 Collecte des dates depuis calendar.txt...");
-	    List<String[]> calendarData = (List<String[]>) gtfsData.get("calendar.txt");
-	    if (calendarData != null && !calendarData.isEmpty()) {
-	        IMap<String, Integer> header = headerMaps.get("calendar.txt");
-	        if (header != null) {
-	            Integer startIdx = findColumnIndex(header, "start_date");
-	            Integer endIdx = findColumnIndex(header, "end_date");
-	            if (startIdx != null && endIdx != null) {
-	                int periodesTraitees = 0;
-	                int datesAjoutees = 0;
-	                for (String[] fields : calendarData) {
-	                    if (fields.length > endIdx) {
-	                        try {
-	                            LocalDate start = LocalDate.parse(fields[startIdx], formatter);
-	                            LocalDate end = LocalDate.parse(fields[endIdx], formatter);
-	                            
-	                            System.out.println("   📋 Période: " + start + " → " + end);
-	                            
-	                            for (LocalDate d = start; !d.isAfter(end); d = d.plusDays(1)) {
-	                                allDates.add(d);
-	                                datesAjoutees++;
-	                            }
-	                            periodesTraitees++;
-	                        } catch (Exception e) {
-	                            System.err.println("❌ Erreur parsing période: " + Arrays.toString(fields));
-	                        }
-	                    }
-	                }
-	                System.out.println("📊 calendar.txt:");
-	                System.out.println("   → Périodes traitées: " + periodesTraitees);
-	                System.out.println("   → Dates ajoutées: " + datesAjoutees);
-	            }
-	        }
-	    } else {
-	        System.out.println("⚠️ calendar.txt non disponible");
-	    }
-	    
-	    // calendar_dates.txt
-	    System.out.println("\n📅 Collecte des dates depuis calendar_dates.txt...");
-	    List<String[]> calendarDates = (List<String[]>) gtfsData.get("calendar_dates.txt");
-	    if (calendarDates != null && !calendarDates.isEmpty()) {
-	        IMap<String, Integer> header = headerMaps.get("calendar_dates.txt");
-	        if (header != null) {
-	            Integer dateIdx = findColumnIndex(header, "date");
-	            if (dateIdx != null) {
-	                int datesAjoutees = 0;
-	                for (String[] fields : calendarDates) {
-	                    if (fields.length > dateIdx) {
-	                        try {
-	                            LocalDate d = LocalDate.parse(fields[dateIdx], formatter);
-	                            allDates.add(d);
-	                            datesAjoutees++;
-	                        } catch (Exception e) {
-	                            System.err.println("❌ Erreur parsing date: " + Arrays.toString(fields));
-	                        }
-	                    }
-	                }
-	                System.out.println("📊 calendar_dates.txt:");
-	                System.out.println("   → Dates ajoutées: " + datesAjoutees);
-	            }
-	        }
-	    } else {
-	        System.out.println("⚠️ calendar_dates.txt non disponible");
-	    }
-	    
-	    System.out.println("\n📊 Total dates collectées: " + allDates.size());
-	    
-	    // Recherche du premier jour avec le même dayOfWeek
-	    System.out.println("🔍 Recherche du premier " + wantedDate.getDayOfWeek() + " disponible...");
-	    
-	    LocalDate firstMatch = null;
-	    int correspondances = 0;
-	    LocalDate minDate = null;
-	    LocalDate maxDate = null;
-	    
-	    for (LocalDate d : allDates) {
-	        // Mise à jour min/max pour debug
-	        if (minDate == null || d.isBefore(minDate)) minDate = d;
-	        if (maxDate == null || d.isAfter(maxDate)) maxDate = d;
-	        
-	        if (d.getDayOfWeek().equals(wantedDate.getDayOfWeek())) {
-	            correspondances++;
-	            if (firstMatch == null || d.isBefore(firstMatch)) {
-	                firstMatch = d;
-	                System.out.println("      → Nouveau premier match: " + firstMatch);
-	            }
-	        }
-	    }
-	    
-	    System.out.println("\n📊 Résultat recherche:");
-	    System.out.println("   → Période GTFS: " + minDate + " → " + maxDate);
-	    System.out.println("   → Correspondances " + wantedDate.getDayOfWeek() + ": " + correspondances);
-	    System.out.println("   → Premier match: " + firstMatch);
-	    
-	    if (firstMatch != null) {
-	        System.out.println("✅ Date de fallback choisie: " + firstMatch);
-	        System.out.println("   → Écart avec date demandée: " + java.time.temporal.ChronoUnit.DAYS.between(wantedDate, firstMatch) + " jours");
-	    } else {
-	        System.out.println("❌ Aucun jour équivalent trouvé");
-	    }
-	    
-	    return firstMatch;
-	}
+    /**
+     * @return The next trip run by the same vehicle (same block_id) on the current service day: the first
+     *         trip of the block leaving after the trip reaches its last stop, or -1 (no block_id, last trip
+     *         of the block).
+     */
+    public synchronized int getNextTripInBlock(int t) {
+        if (stopTimes == null) return -1;
+        if (nextTripOfBlock == null) buildBlockChains();
+        if (t < 0 || t >= nextTripOfBlock.length) return -1;
+        int end = getTripEndTime(t);
+        for (int next = nextTripOfBlock[t]; next >= 0; next = nextTripOfBlock[next]) {
+            // les trips des autres jours de service sont intercalés dans la chaîne du block
+            if (currentActiveTrips.get(next) && getTripStartTime(next) >= end) return next;
+        }
+        return -1;
+    }
 
-    
-    public java.time.LocalDate getStartingDate() {
-        java.time.LocalDate minDate = null;
-        java.time.format.DateTimeFormatter formatter = java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd");
-
-        // calendar.txt
-        List<String[]> calendarData = (List<String[]>) gtfsData.get("calendar.txt");
-        if (calendarData != null && !calendarData.isEmpty()) {
-            IMap<String, Integer> header = headerMaps.get("calendar.txt");
-            if (header != null) {
-                Integer startIdx = findColumnIndex(header, "start_date");
-                if (startIdx != null) {
-                    for (String[] fields : calendarData) {
-                        if (fields.length > startIdx) {
-                            java.time.LocalDate d = java.time.LocalDate.parse(fields[startIdx], formatter);
-                            if (minDate == null || d.isBefore(minDate)) minDate = d;
-                        }
-                    }
-                }
-            }
+    /**
+     * Chains the trips of each block_id by departure time, all service days mixed (getNextTripInBlock
+     * skips the trips not running on the current day).
+     */
+    private void buildBlockChains() {
+        if (tripDictionary == null) buildIdDictionaries();
+        int nbTrips = stopTimes.getTripCount();
+        nextTripOfBlock = new int[nbTrips];
+        Arrays.fill(nextTripOfBlock, -1);
+        Map<String, List<Integer>> tripsOfBlock = new HashMap<>();
+        for (int t = 0; t < nbTrips; t++) {
+            TransportTrip trip = tripsByIndex[t];
+            if (trip == null || trip.getBlockId() == null || stopTimes.getTripEnd(t) <= stopTimes.getTripStart(t)) continue;
+            tripsOfBlock.computeIfAbsent(trip.getBlockId(), k -> new ArrayList<>()).add(t);
+        }
+        for (List<Integer> block : tripsOfBlock.values()) {
+            block.sort((a, b) -> Integer.compare(getTripStartTime(a), getTripStartTime(b)));
+            for (int k = 0; k + 1 < block.size(); k++) nextTripOfBlock[block.get(k)] = block.get(k + 1);
         }
+        System.out.println("[INFO] " + tripsOfBlock.size() + " blocks (block_id) chaînés");
+    }
 
-        // calendar_dates.txt
-        List<String[]> calendarDates = (List<String[]>) gtfsData.get("calendar_dates.txt");
-        if (calendarDates != null && !calendarDates.isEmpty()) {
-            IMap<String, Integer> header = headerMaps.get("calendar_dates.txt");
-            if (header != null) {
-                Integer dateIdx = findColumnIndex(header, "date");
-                if (dateIdx != null) {
-                    for (String[] fields : calendarDates) {
-                        if (fields.length > dateIdx) {
-                            java.time.LocalDate d = java.time.LocalDate.parse(fields[dateIdx], formatter);
-                            if (minDate == null || d.isBefore(minDate)) minDate = d;
-                        }
-                    }
-                }
-            }
+    /** @return The service day whose trips are attached to the stops, or null when all the trips are used. */
+    public LocalDate getCurrentServiceDay() {
+        return currentServiceDay;
+    }
+
+    /**
+     * Moves the departures of the stops to another service day (e.g. when a multi-day simulation
+     * crosses midnight). The departures of the new day are selected as in computeDepartureInfo, then only
+     * the stops whose list of departing trips changed are updated: the entries of the trips still running
+     * are kept as they are, only the trips starting to run get new entries. The departureTripsInfo of the
+     * stops, and the departureStopsInfo and tripNumber of their agents, are updated in place.
+     *
+     * @return The number of stops whose departures changed (0 if the day is already the current one).
+     */
+    public synchronized int switchServiceDay(LocalDate date) {
+        if (date == null || stopTimes == null || date.equals(currentServiceDay)) return 0;
+        if (tripDictionary == null) buildIdDictionaries();
+        BitSet activeTrips = getActiveTripIndexesForDate(date);
+        currentServiceDay = date;
+        if (activeTrips.equals(currentActiveTrips)) return 0;
+
+        for (int t = activeTrips.nextSetBit(0); t >= 0 && t < stopTimes.getTripCount(); t = activeTrips.nextSetBit(t + 1)) {
+            attachTrip(t);
+        }
+        int[][] departures = selectDepartures(activeTrips);
+        int changedStops = 0;
+        for (int s = 0; s < departures.length; s++) {
+            int[] previous = s < departuresOfStop.length ? departuresOfStop[s] : new int[0];
+            if (Arrays.equals(previous, departures[s])) continue;
+            TransportStop stop = stopsByIndex[s];
+            if (stop == null) continue;
+            updateStopDepartures(stop, departures[s]);
+            changedStops++;
         }
-        return minDate;
+        departuresOfStop = departures;
+        currentActiveTrips = activeTrips;
+        departureSchedule = null;
+        tripIntervalIndex = null;
+        stopPassageIndex = null;
+        System.out.println("[INFO] Journée de service " + date + " : " + activeTrips.cardinality() + " trips actifs, "
+                + changedStops + " stops mis à jour");
+        return changedStops;
     }
 
+    @SuppressWarnings("unchecked")
+    private void updateStopDepartures(TransportStop stop, int[] trips) {
+        stop.ensureDepartureTripsInfo();
+        IMap<String, IList<GamaPair<String, Integer>>> info = stop.getDepartureTripsInfo();
+        IAgent agent = stop.getAgent();
+        IMap<String, IList<GamaPair<IAgent, Integer>>> agentInfo = agent == null ? null
+                : (IMap<String, IList<GamaPair<IAgent, Integer>>>) agent.getAttribute("departureStopsInfo");
+        if (agent != null) {
+            // Agent sans map (stop sans départ à sa création) : on lui donne celles du stop
+            if (agentInfo == null) {
+                agentInfo = GamaMapFactory.create(Types.STRING, Types.LIST);
+                agent.setAttribute("departureStopsInfo", agentInfo);
+            }
+            if (agent.getAttribute("departureTripsInfo") != info) agent.setAttribute("departureTripsInfo", info);
+        }
 
-    public java.time.LocalDate getEndingDate() {
-        java.time.LocalDate maxDate = null;
-        java.time.format.DateTimeFormatter formatter = java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd");
-
-        // calendar.txt
-        List<String[]> calendarData = (List<String[]>) gtfsData.get("calendar.txt");
-        if (calendarData != null && !calendarData.isEmpty()) {
-            IMap<String, Integer> header = headerMaps.get("calendar.txt");
-            if (header != null) {
-                Integer endIdx = findColumnIndex(header, "end_date");
-                if (endIdx != null) {
-                    for (String[] fields : calendarData) {
-                        if (fields.length > endIdx) {
-                            java.time.LocalDate d = java.time.LocalDate.parse(fields[endIdx], formatter);
-                            if (maxDate == null || d.isAfter(maxDate)) maxDate = d;
-                        }
-                    }
-                }
+        // Entrées des trips qui circulent encore, réutilisées telles quelles
+        Map<String, IList<GamaPair<String, Integer>>> previous = new HashMap<>(info);
+        Map<String, IList<GamaPair<IAgent, Integer>>> previousAgent = agentInfo == null ? Map.of() : new HashMap<>(agentInfo);
+        info.clear();
+        if (agentInfo != null) agentInfo.clear();
+        for (int t : trips) {
+            String tripId = stopTimes.getTripId(t);
+            IList<GamaPair<String, Integer>> pairs = previous.get(tripId);
+            info.put(tripId, pairs != null ? pairs : stopPairsOf(t));
+            if (agentInfo != null) {
+                IList<GamaPair<IAgent, Integer>> agentPairs = previousAgent.get(tripId);
+                agentInfo.put(tripId, agentPairs != null ? agentPairs : getAgentStopPairs(t));
             }
         }
-        // calendar_dates.txt
-        List<String[]> calendarDates = (List<String[]>) gtfsData.get("calendar_dates.txt");
-        if (calendarDates != null && !calendarDates.isEmpty()) {
-            IMap<String, Integer> header = headerMaps.get("calendar_dates.txt");
-            if (header != null) {
-                Integer dateIdx = findColumnIndex(header, "date");
-                if (dateIdx != null) {
-                    for (String[] fields : calendarDates) {
-                        if (fields.length > dateIdx) {
-                            java.time.LocalDate d = java.time.LocalDate.parse(fields[dateIdx], formatter);
-                            if (maxDate == null || d.isAfter(maxDate)) maxDate = d;
-                        }
-                    }
-                }
+        stop.setTripNumber(info.size());
+        if (agent != null) agent.setAttribute("tripNumber", info.size());
+    }
+
+    /**
+     * @return The (stop agent, departure time) pairs of a trip (as in the departureStopsInfo of the stop
+     *         agents); stops without agent are skipped.
+     */
+    public IList<GamaPair<IAgent, Integer>> getAgentStopPairs(int t) {
+        IList<GamaPair<IAgent, Integer>> pairs = GamaListFactory.create(Types.PAIR);
+        for (int row = stopTimes.getTripStart(t); row < stopTimes.getTripEnd(t); row++) {
+            TransportStop stop = stopsByIndex[stopTimes.getStopIndex(row)];
+            IAgent stopAgent = stop != null ? stop.getAgent() : null;
+            if (stopAgent != null) {
+                pairs.add(new GamaPair<>(stopAgent, Math.max(0, stopTimes.getDepartureTime(row)), Types.AGENT, Types.INT));
             }
         }
-        return maxDate;
+        return pairs;
     }
 
-    
+ /**
+  * Index of the service calendar (calendar.txt and calendar_dates.txt), built on first use.
+  */
+ public synchronized ServiceCalendar getServiceCalendar() {
+     if (serviceCalendar == null) {
+         if (tripDictionary == null) buildIdDictionaries();
+         serviceCalendar = new ServiceCalendar(getFileRows("trips.txt"), getHeaderMap("trips.txt"),
+                 getFileRows("calendar.txt"), getHeaderMap("calendar.txt"),
+                 getFileRows("calendar_dates.txt"), getHeaderMap("calendar_dates.txt"), tripDictionary);
+         System.out.println("[INFO] Calendrier des services indexé : " + serviceCalendar);
+     }
+     return serviceCalendar;
+ }
 
-    
-    // Method to convert departureTime of stops into seconds
-    private String convertTimeToSeconds(String timeStr) {
-        try {
-            String[] parts = timeStr.split(":");
-            int hours = Integer.parseInt(parts[0]);
-            int minutes = Integer.parseInt(parts[1]);
-            int seconds = Integer.parseInt(parts[2]);
-            int totalSeconds = (hours * 3600 + minutes * 60 + seconds);
-            return String.valueOf(totalSeconds);
-        } catch (Exception e) {
-            System.err.println("[ERROR] Failed to convert time: " + timeStr + " -> " + e.getMessage());
-            return "0";  // fallback
-        }
+ /**
+  * @return The indices (in the trip dictionary) of the trips running on the date. When no trip runs
+  *         that day, the first day of the feed with the same weekday is used instead.
+  */
+ private BitSet getActiveTripIndexesForDate(LocalDate date) {
+     ServiceCalendar calendar = getServiceCalendar();
+     BitSet active = calendar.getActiveTrips(date);
+     if (active.isEmpty()) {
+         LocalDate altDate = calendar.findFirstDateWithSameWeekDay(date);
+         if (altDate != null && !altDate.equals(date)) {
+             active = calendar.getActiveTrips(altDate);
+             System.out.println("[INFO] Aucun trip actif le " + date + " : jour équivalent " + altDate
+                     + " (" + active.cardinality() + " trips)");
+         } else {
+             System.err.println("[WARNING] Aucun trip actif pour la date " + date + " et aucun jour équivalent dans le GTFS.");
+         }
+     }
+     return active;
+ }
+
+ private Set<String> getActiveTripIdsForDate(IScope scope, LocalDate date) {
+     BitSet active = getActiveTripIndexesForDate(date);
+     Set<String> validTripIds = new HashSet<>(Math.max(16, active.cardinality() * 2));
+     for (int t = active.nextSetBit(0); t >= 0; t = active.nextSetBit(t + 1)) {
+         validTripIds.add(tripDictionary.get(t));
+     }
+     return validTripIds;
+ }
+
+    public java.time.LocalDate getStartingDate() {
+        return getServiceCalendar().getFirstDate();
+    }
+
+    public java.time.LocalDate getEndingDate() {
+        return getServiceCalendar().getLastDate();
     }
-    
-   
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package gama.extension.GTFS;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of GTFS identifiers (trip_id, stop_id, route_id, shape_id).
+ *
+ * Each distinct identifier gets a dense index 0..size()-1, in order of first insertion, so that
+ * internal indexes can use int arrays and BitSets instead of String-keyed maps. The original
+ * strings are given back with get(index) at the GAML boundary.
+ */
+public class IdDictionary {
+
+    private final List<String> ids;
+    private final Map<String, Integer> indexById;
+
+    public IdDictionary() {
+        this(16);
+    }
+
+    public IdDictionary(int expectedSize) {
+        this.ids = new ArrayList<>(expectedSize);
+        this.indexById = new HashMap<>(Math.max(16, expectedSize * 2));
+    }
+
+    /**
+     * @return The index of the identifier, adding it to the dictionary if it is new.
+     */
+    public int intern(String id) {
+        Integer idx = indexById.get(id);
+        if (idx == null) {
+            idx = ids.size();
+            ids.add(id);
+            indexById.put(id, idx);
+        }
+        return idx;
+    }
+
+    /** @return The index of the identifier, or -1 if it is unknown. */
+    public int indexOf(String id) {
+        Integer idx = indexById.get(id);
+        return idx == null ? -1 : idx;
+    }
+
+    /** @return The identifier of an index. */
+    public String get(int index) {
+        return ids.get(index);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /** @return A copy that can be extended without changing this dictionary. */
+    public IdDictionary copy() {
+        IdDictionary copy = new IdDictionary(ids.size());
+        for (String id : ids) copy.intern(id);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "IdDictionary{size=" + ids.size() + "}";
+    }
+}
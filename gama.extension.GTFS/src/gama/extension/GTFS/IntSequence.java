@@ -0,0 +1,29 @@
+package gama.extension.GTFS;
+
+import java.util.Arrays;
+
+/**
+ * Sequence of ints used as a hash key: stop list of a trip pattern, offset vector of a trip, signature
+ * of a trip when duplicates are looked for. The array is kept as is (not copied) and must not be
+ * modified once the key is in a map.
+ */
+final class IntSequence {
+
+    final int[] values;
+    private final int hash;
+
+    IntSequence(int... values) {
+        this.values = values;
+        this.hash = Arrays.hashCode(values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IntSequence && Arrays.equals(values, ((IntSequence) o).values);
+    }
+}
@@ -1,11 +1,24 @@
 package gama.extension.GTFS.Operators;
 
 import gama.core.metamodel.shape.GamaShape;
+import gama.core.metamodel.shape.IShape;
 import gama.core.runtime.IScope;
+import gama.core.metamodel.agent.IAgent;
 import gama.core.util.GamaDate;
+import gama.core.util.GamaListFactory;
+import gama.core.util.GamaPair;
+import gama.core.util.IList;
+import gama.core.util.IMap;
+import gama.extension.GTFS.DepartureSchedule;
 import gama.extension.GTFS.GTFS_reader;
+import gama.extension.GTFS.StopPassageIndex;
+import gama.extension.GTFS.TransportShape;
+import gama.extension.GTFS.TransportStop;
 import gama.gaml.types.IType;
+import gama.gaml.types.Types;
 import gama.annotations.precompiler.IOperatorCategory;
+import gama.annotations.precompiler.GamlAnnotations.doc;
+import gama.annotations.precompiler.GamlAnnotations.example;
 import gama.annotations.precompiler.GamlAnnotations.operator;
 
 
@@ -32,7 +45,237 @@ public class GTFSOperators {
 		    if (localDate == null) return null;
 		    return new GamaDate(scope, localDate);
 		}
-		
 
+		@operator(
+		    value = "update_service_day",
+		    type = IType.INT,
+		    category = { IOperatorCategory.DATE }
+		)
+		@doc(
+		    value = "Moves the departures of the stops of the GTFS file to the service day of the date, "
+		        + "typically called each cycle in a multi-day simulation. Nothing is done while the day does not change; "
+		        + "at midnight only the stops whose departing trips differ from the previous day are updated "
+		        + "(departureTripsInfo, and departureStopsInfo/tripNumber of the bus_stop agents). "
+		        + "Returns the number of updated stops.",
+		    examples = { @example(value = "update_service_day(gtfs_f, current_date)", isExecutable = false) }
+		)
+		public static Integer update_service_day(final IScope scope, final GTFS_reader gtfs, final GamaDate date) {
+		    if (gtfs == null || date == null) return 0;
+		    return gtfs.switchServiceDay(date.getLocalDateTime().toLocalDate());
+		}
+
+		@operator(
+		    value = "departures_between",
+		    type = IType.LIST,
+		    content_type = IType.PAIR,
+		    category = { IOperatorCategory.DATE }
+		)
+		@doc(
+		    value = "Returns the trips leaving in the interval (from, to] of the current service day, as (origin stop agent :: trip_id) pairs "
+		        + "sorted by departure time. Times are in seconds since the start of the service day. "
+		        + "The timetable is taken as repeating every day: the departures after 24:00:00 (trips of the previous service day) "
+		        + "are also given at their time minus 24h, before the others. "
+		        + "When to < from the interval crosses midnight: it gives the departures of (from, to + 24h] "
+		        + "(GTFS times after 24:00:00 of the service day) then those of [0, to], as for passages_between. "
+		        + "Calling it each step with the previous and the current time gives every departure once, whatever the step.",
+		    examples = { @example(value = "departures_between(gtfs_f, previous_seconds, current_seconds_mod)", isExecutable = false) }
+		)
+		public static IList<GamaPair<IAgent, String>> departures_between(final IScope scope, final GTFS_reader gtfs,
+		        final Integer from, final Integer to) {
+		    IList<GamaPair<IAgent, String>> result = GamaListFactory.create(Types.PAIR);
+		    if (gtfs == null || from == null || to == null) return result;
+		    DepartureSchedule schedule = gtfs.getDepartureSchedule();
+		    for (int i : schedule.between(from, to)) {
+		        TransportStop stop = gtfs.getStopByIndex(schedule.getStopIndex(i));
+		        if (stop == null || stop.getAgent() == null) continue;
+		        String tripId = gtfs.getTripDictionary().get(schedule.getTripIndex(i));
+		        result.add(new GamaPair<>(stop.getAgent(), tripId, Types.AGENT, Types.STRING));
+		    }
+		    return result;
+		}
+
+		@operator(
+		    value = "running_trips_at",
+		    type = IType.LIST,
+		    content_type = IType.MAP,
+		    category = { IOperatorCategory.DATE }
+		)
+		@doc(
+		    value = "Returns the state of every trip of the current service day running at the time (seconds since the start of the service day), "
+		        + "found with an index of the [start, end] intervals of the trips. Each trip is a map with the keys trip_id, route_id, route_type, shape_id, "
+		        + "departureStopsInfo (stop agent :: departure time), current_stop_index (last stop reached), next_stop (stop agent, nil at the last stop), "
+		        + "moving (false while waiting at a stop), segment_progress (towards next_stop, in [0, 1]), shape_progress (along the shape, in [0, 1]) "
+		        + "and location (interpolated along the shape). It allows a simulation starting in the middle of the day to create the vehicles "
+		        + "already en route instead of simulating from the first departure.",
+		    examples = { @example(value = "loop state over: running_trips_at(gtfs_f, 8 * 3600) { create bus with: state; }", isExecutable = false) }
+		)
+		public static IList<IMap<String, Object>> running_trips_at(final IScope scope, final GTFS_reader gtfs, final Integer time) {
+		    IList<IMap<String, Object>> result = GamaListFactory.create(Types.MAP);
+		    if (gtfs == null || time == null) return result;
+		    for (int t : gtfs.getTripsRunningAt(time)) {
+		        // trip d'après minuit (heure GTFS > 24h) : son état est calculé à time + 24h
+		        int tripTime = gtfs.getTripStartTime(t) > time ? time + 86400 : time;
+		        result.add(gtfs.getTripStateAt(scope, t, tripTime));
+		    }
+		    return result;
+		}
+
+		@operator(
+		    value = "trips_running_between",
+		    type = IType.LIST,
+		    content_type = IType.STRING,
+		    category = { IOperatorCategory.DATE }
+		)
+		@doc(
+		    value = "Returns the ids of the trips of the current service day running during the window [from, to] (seconds since the start of the day): "
+		        + "trips whose first departure is before to and last arrival after from, found with an interval tree of the trips. "
+		        + "When to < from the window crosses midnight. The trips of the previous day still running after midnight "
+		        + "(GTFS times after 24:00:00) are included.",
+		    examples = { @example(value = "trips_running_between(gtfs_f, 8 * 3600, 9 * 3600)", isExecutable = false) }
+		)
+		public static IList<String> trips_running_between(final IScope scope, final GTFS_reader gtfs, final Integer from, final Integer to) {
+		    if (gtfs == null || from == null || to == null) return GamaListFactory.create(Types.STRING);
+		    return tripIds(gtfs, gtfs.getTripsRunningBetween(gtfs.getCurrentServiceDay(), from, to));
+		}
+
+		@operator(
+		    value = "trips_running_between",
+		    type = IType.LIST,
+		    content_type = IType.STRING,
+		    category = { IOperatorCategory.DATE }
+		)
+		@doc(
+		    value = "Same as trips_running_between(gtfs, from, to) for the service day of the date, without changing the service day of the stops.",
+		    examples = { @example(value = "trips_running_between(gtfs_f, date(\"2025-05-14\"), 23 * 3600, 3600)", isExecutable = false) }
+		)
+		public static IList<String> trips_running_between(final IScope scope, final GTFS_reader gtfs, final GamaDate date,
+		        final Integer from, final Integer to) {
+		    if (gtfs == null || date == null || from == null || to == null) return GamaListFactory.create(Types.STRING);
+		    return tripIds(gtfs, gtfs.getTripsRunningBetween(date.getLocalDateTime().toLocalDate(), from, to));
+		}
+
+		@operator(
+		    value = "next_departures",
+		    type = IType.LIST,
+		    content_type = IType.PAIR,
+		    category = { IOperatorCategory.DATE }
+		)
+		@doc(
+		    value = "Returns the next departures of the current service day from a stop (bus_stop agent), at or after the time (seconds since the start of the day), "
+		        + "as at most n (trip_id :: departure time) pairs sorted by time. Every stop of the trips is indexed, not only their first stop, "
+		        + "and the lookup is a binary search in the passages of the stop. Arrivals at the last stop of a trip are not departures.",
+		    examples = { @example(value = "next_departures(gtfs_f, my_stop, current_seconds_mod, 3)", isExecutable = false) }
+		)
+		public static IList<GamaPair<String, Integer>> next_departures(final IScope scope, final GTFS_reader gtfs, final IAgent stop,
+		        final Integer time, final Integer n) {
+		    return next_departures(scope, gtfs, stop == null ? null : (String) stop.getAttribute("stopId"), time, n);
+		}
+
+		@operator(
+		    value = "next_departures",
+		    type = IType.LIST,
+		    content_type = IType.PAIR,
+		    category = { IOperatorCategory.DATE }
+		)
+		@doc(
+		    value = "Same as next_departures(gtfs, stop agent, time, n) with the stop_id of the stop.",
+		    examples = { @example(value = "next_departures(gtfs_f, \"3377699720880300\", 8 * 3600, 5)", isExecutable = false) }
+		)
+		public static IList<GamaPair<String, Integer>> next_departures(final IScope scope, final GTFS_reader gtfs, final String stopId,
+		        final Integer time, final Integer n) {
+		    IList<GamaPair<String, Integer>> result = GamaListFactory.create(Types.PAIR);
+		    int s = stopIndexOf(gtfs, stopId);
+		    if (s < 0 || time == null || n == null) return result;
+		    StopPassageIndex passages = gtfs.getStopPassageIndex();
+		    return passagePairs(gtfs, passages, passages.nextDepartures(s, time, n));
+		}
+
+		@operator(
+		    value = "passages_between",
+		    type = IType.LIST,
+		    content_type = IType.PAIR,
+		    category = { IOperatorCategory.DATE }
+		)
+		@doc(
+		    value = "Returns the vehicles of the current service day passing a stop (bus_stop agent) during [from, to] (seconds since the start of the day), "
+		        + "as (trip_id :: time) pairs sorted by time, with the departure time at the stop (arrival time at the last stop of a trip). "
+		        + "As for departures_between, the timetable repeats every day: the passages after 24:00:00 (trips of the previous service day) "
+		        + "are also given at their time minus 24h, before the others. "
+		        + "When to < from the window crosses midnight: it gives the passages of [from, to + 24h] "
+		        + "(GTFS times after 24:00:00 of the service day) then those of [0, to].",
+		    examples = { @example(value = "passages_between(gtfs_f, my_stop, 7 * 3600, 8 * 3600)", isExecutable = false) }
+		)
+		public static IList<GamaPair<String, Integer>> passages_between(final IScope scope, final GTFS_reader gtfs, final IAgent stop,
+		        final Integer from, final Integer to) {
+		    return passages_between(scope, gtfs, stop == null ? null : (String) stop.getAttribute("stopId"), from, to);
+		}
+
+		@operator(
+		    value = "passages_between",
+		    type = IType.LIST,
+		    content_type = IType.PAIR,
+		    category = { IOperatorCategory.DATE }
+		)
+		@doc(
+		    value = "Same as passages_between(gtfs, stop agent, from, to) with the stop_id of the stop.",
+		    examples = { @example(value = "passages_between(gtfs_f, \"3377699720880300\", 7 * 3600, 8 * 3600)", isExecutable = false) }
+		)
+		public static IList<GamaPair<String, Integer>> passages_between(final IScope scope, final GTFS_reader gtfs, final String stopId,
+		        final Integer from, final Integer to) {
+		    IList<GamaPair<String, Integer>> result = GamaListFactory.create(Types.PAIR);
+		    int s = stopIndexOf(gtfs, stopId);
+		    if (s < 0 || from == null || to == null) return result;
+		    StopPassageIndex passages = gtfs.getStopPassageIndex();
+		    return passagePairs(gtfs, passages, passages.passagesBetween(s, from, to));
+		}
+
+		private static int stopIndexOf(final GTFS_reader gtfs, final String stopId) {
+		    if (gtfs == null || stopId == null || gtfs.getStopDictionary() == null) return -1;
+		    return gtfs.getStopDictionary().indexOf(stopId);
+		}
+
+		private static IList<GamaPair<String, Integer>> passagePairs(final GTFS_reader gtfs, final StopPassageIndex passages, final int[] positions) {
+		    IList<GamaPair<String, Integer>> pairs = GamaListFactory.create(Types.PAIR);
+		    for (int k : positions) {
+		        pairs.add(new GamaPair<>(gtfs.getTripDictionary().get(passages.getTripIndex(k)), passages.getTime(k), Types.STRING, Types.INT));
+		    }
+		    return pairs;
+		}
+
+		private static IList<String> tripIds(final GTFS_reader gtfs, final int[] tripIndexes) {
+		    IList<String> ids = GamaListFactory.create(Types.STRING);
+		    for (int t : tripIndexes) ids.add(gtfs.getTripDictionary().get(t));
+		    return ids;
+		}
+
+		@operator(
+		    value = "simplified_shape",
+		    type = IType.GEOMETRY,
+		    category = { IOperatorCategory.SPATIAL }
+		)
+		@doc(
+		    value = "Returns the line of a shape (transport_shape agent) simplified with the Douglas-Peucker algorithm: "
+		        + "the points kept are original points of the shape and the line stays closer than the tolerance (in metres) to the full shape. "
+		        + "Returns nil if the shape is unknown.",
+		    examples = { @example(value = "simplified_shape(gtfs_f, my_shape, 10.0)", isExecutable = false) }
+		)
+		public static IShape simplified_shape(final IScope scope, final GTFS_reader gtfs, final IAgent shape, final Double tolerance) {
+		    return shape == null ? null : simplified_shape(scope, gtfs, (String) shape.getAttribute("shapeId"), tolerance);
+		}
+
+		@operator(
+		    value = "simplified_shape",
+		    type = IType.GEOMETRY,
+		    category = { IOperatorCategory.SPATIAL }
+		)
+		@doc(
+		    value = "Same as simplified_shape(gtfs, shape agent, tolerance) with the shape_id of the shape.",
+		    examples = { @example(value = "simplified_shape(gtfs_f, \"4_0\", 10.0)", isExecutable = false) }
+		)
+		public static IShape simplified_shape(final IScope scope, final GTFS_reader gtfs, final String shapeId, final Double tolerance) {
+		    if (gtfs == null || shapeId == null) return null;
+		    TransportShape shape = gtfs.getShape(scope, shapeId);
+		    return shape == null ? null : shape.generateSimplifiedShape(scope, tolerance == null ? 0.0 : tolerance);
+		}
 
 }
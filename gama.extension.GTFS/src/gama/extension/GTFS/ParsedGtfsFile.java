@@ -0,0 +1,17 @@
+package gama.extension.GTFS;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of parsing one GTFS text file: produced on a loader thread or read back from the
+ * feed cache, then stored in the GTFS_reader maps.
+ */
+class ParsedGtfsFile {
+    String name;
+    char separator;
+    Map<String, Integer> headerMap = new HashMap<>();
+    List<String[]> rows;              // null pour stop_times.txt
+    StopTimesTable stopTimes;         // stop_times.txt compilé
+}
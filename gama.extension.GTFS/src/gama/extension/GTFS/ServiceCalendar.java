@@ -0,0 +1,216 @@
+package gama.extension.GTFS;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the service calendar of a feed, built once when the feed is loaded.
+ *
+ * Each service_id has a BitSet of the days it runs on, over the date range of the feed
+ * (calendar.txt periods and weekdays, with the calendar_dates.txt exceptions applied), and a BitSet
+ * of its trips (indices of the trip dictionary of GTFS_reader). The trips running on a date are
+ * then the union of the trip sets of the services active that day, without reading the files again.
+ */
+public class ServiceCalendar {
+
+    private static final String[] WEEKDAYS = { "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday" };
+
+    private final IdDictionary services = new IdDictionary();
+    private BitSet[] daysOfService = new BitSet[0];
+    private BitSet[] tripsOfService = new BitSet[0];
+    /** Days mentioned by calendar.txt or calendar_dates.txt, used to look for a replacement day. */
+    private final BitSet coveredDays = new BitSet();
+    private final int nbTrips;
+    private long firstDay = Long.MAX_VALUE; // en jours depuis 1970-01-01
+    private long lastDay = Long.MIN_VALUE;
+
+    /**
+     * @param tripDictionary Trip dictionary of the reader; trips of trips.txt that are not in it are ignored.
+     */
+    public ServiceCalendar(List<String[]> tripsData, Map<String, Integer> tripsHeader,
+            List<String[]> calendarData, Map<String, Integer> calendarHeader,
+            List<String[]> calendarDatesData, Map<String, Integer> calendarDatesHeader,
+            IdDictionary tripDictionary) {
+        this.nbTrips = tripDictionary.size();
+
+        // 1. Bornes de la période couverte par le GTFS
+        Integer startIdx = column(calendarHeader, "start_date");
+        Integer endIdx = column(calendarHeader, "end_date");
+        Integer dateIdx = column(calendarDatesHeader, "date");
+        if (calendarData != null && startIdx != null && endIdx != null) {
+            for (String[] fields : calendarData) {
+                long start = parseDay(field(fields, startIdx));
+                long end = parseDay(field(fields, endIdx));
+                if (start != Long.MIN_VALUE) firstDay = Math.min(firstDay, start);
+                if (end != Long.MIN_VALUE) lastDay = Math.max(lastDay, end);
+            }
+        }
+        if (calendarDatesData != null && dateIdx != null) {
+            for (String[] fields : calendarDatesData) {
+                long day = parseDay(field(fields, dateIdx));
+                if (day == Long.MIN_VALUE) continue;
+                firstDay = Math.min(firstDay, day);
+                lastDay = Math.max(lastDay, day);
+            }
+        }
+
+        // 2. calendar.txt : jours de la semaine sur chaque période
+        Integer serviceIdx = column(calendarHeader, "service_id");
+        if (calendarData != null && serviceIdx != null && startIdx != null && endIdx != null) {
+            Integer[] weekdayIdx = new Integer[7];
+            for (int d = 0; d < 7; d++) weekdayIdx[d] = column(calendarHeader, WEEKDAYS[d]);
+            for (String[] fields : calendarData) {
+                String serviceId = clean(field(fields, serviceIdx));
+                long start = parseDay(field(fields, startIdx));
+                long end = parseDay(field(fields, endIdx));
+                if (serviceId.isEmpty() || start == Long.MIN_VALUE || end == Long.MIN_VALUE || end < start) continue;
+                BitSet days = days(serviceId);
+                coveredDays.set(offset(start), offset(end) + 1);
+                for (long day = start; day <= end; day++) {
+                    Integer idx = weekdayIdx[LocalDate.ofEpochDay(day).getDayOfWeek().ordinal()];
+                    if (idx != null && "1".equals(field(fields, idx))) days.set(offset(day));
+                }
+            }
+        }
+
+        // 3. calendar_dates.txt : ajouts (1) et suppressions (2), dans l'ordre du fichier
+        Integer serviceIdxDates = column(calendarDatesHeader, "service_id");
+        Integer exceptionIdx = column(calendarDatesHeader, "exception_type");
+        if (calendarDatesData != null && serviceIdxDates != null && dateIdx != null && exceptionIdx != null) {
+            for (String[] fields : calendarDatesData) {
+                String serviceId = clean(field(fields, serviceIdxDates));
+                long day = parseDay(field(fields, dateIdx));
+                if (serviceId.isEmpty() || day == Long.MIN_VALUE) continue;
+                coveredDays.set(offset(day));
+                String exceptionType = field(fields, exceptionIdx).trim();
+                if ("1".equals(exceptionType)) days(serviceId).set(offset(day));
+                else if ("2".equals(exceptionType)) days(serviceId).clear(offset(day));
+            }
+        }
+
+        // 4. trips.txt : trips de chaque service
+        Integer tripIdx = column(tripsHeader, "trip_id");
+        Integer tripServiceIdx = column(tripsHeader, "service_id");
+        if (tripsData != null && tripIdx != null && tripServiceIdx != null) {
+            for (String[] fields : tripsData) {
+                if (fields == null || fields.length <= Math.max(tripIdx, tripServiceIdx)) continue;
+                int t = tripDictionary.indexOf(fields[tripIdx].trim().replace("\"", "").replace("'", ""));
+                if (t < 0) continue;
+                String serviceId = clean(fields[tripServiceIdx]);
+                days(serviceId); // le service existe même sans calendrier
+                tripsOfService[services.indexOf(serviceId)].set(t);
+            }
+        }
+    }
+
+    /** @return The first date of the feed, or null if the feed has no calendar. */
+    public LocalDate getFirstDate() {
+        return firstDay == Long.MAX_VALUE ? null : LocalDate.ofEpochDay(firstDay);
+    }
+
+    /** @return The last date of the feed, or null if the feed has no calendar. */
+    public LocalDate getLastDate() {
+        return lastDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(lastDay);
+    }
+
+    /** @return The number of services. */
+    public int getServiceCount() {
+        return services.size();
+    }
+
+    /** @return True if the service runs on the date (false for an unknown service or a date outside the feed). */
+    public boolean isActive(String serviceId, LocalDate date) {
+        int s = services.indexOf(serviceId);
+        int d = offsetOf(date);
+        return s >= 0 && d >= 0 && daysOfService[s].get(d);
+    }
+
+    /** @return The indices (in the trip dictionary) of the trips running on the date. */
+    public BitSet getActiveTrips(LocalDate date) {
+        BitSet active = new BitSet(nbTrips);
+        int d = offsetOf(date);
+        if (d < 0) return active;
+        for (int s = 0; s < services.size(); s++) {
+            if (daysOfService[s].get(d)) active.or(tripsOfService[s]);
+        }
+        return active;
+    }
+
+    /**
+     * @return The first day of the feed (listed in calendar.txt or calendar_dates.txt) falling on the
+     *         same weekday as the date, or null.
+     */
+    public LocalDate findFirstDateWithSameWeekDay(LocalDate date) {
+        DayOfWeek wanted = date.getDayOfWeek();
+        for (int d = coveredDays.nextSetBit(0); d >= 0; d = coveredDays.nextSetBit(d + 1)) {
+            LocalDate candidate = LocalDate.ofEpochDay(firstDay + d);
+            if (candidate.getDayOfWeek() == wanted) return candidate;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceCalendar{services=" + services.size() + ", from=" + getFirstDate() + ", to=" + getLastDate() + "}";
+    }
+
+    private BitSet days(String serviceId) {
+        int s = services.intern(serviceId);
+        if (s == daysOfService.length) {
+            daysOfService = Arrays.copyOf(daysOfService, Math.max(8, s * 2));
+            tripsOfService = Arrays.copyOf(tripsOfService, daysOfService.length);
+        }
+        if (daysOfService[s] == null) {
+            daysOfService[s] = new BitSet();
+            tripsOfService[s] = new BitSet();
+        }
+        return daysOfService[s];
+    }
+
+    private int offset(long day) {
+        return (int) (day - firstDay);
+    }
+
+    private int offsetOf(LocalDate date) {
+        if (date == null || firstDay == Long.MAX_VALUE) return -1;
+        long day = date.toEpochDay();
+        return day < firstDay || day > lastDay ? -1 : offset(day);
+    }
+
+    /** Parses a GTFS date (YYYYMMDD) into a day count since 1970-01-01, or Long.MIN_VALUE. */
+    static long parseDay(String s) {
+        String value = s.trim();
+        if (value.length() != 8) return Long.MIN_VALUE;
+        int n = 0;
+        for (int i = 0; i < 8; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return Long.MIN_VALUE;
+            n = n * 10 + (c - '0');
+        }
+        try {
+            return LocalDate.of(n / 10000, (n / 100) % 100, n % 100).toEpochDay();
+        } catch (java.time.DateTimeException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static String field(String[] fields, int index) {
+        return fields != null && index < fields.length && fields[index] != null ? fields[index] : "";
+    }
+
+    private static String clean(String value) {
+        return value.trim().replace("\"", "");
+    }
+
+    private static Integer column(Map<String, Integer> headerMap, String name) {
+        if (headerMap == null) return null;
+        for (Map.Entry<String, Integer> e : headerMap.entrySet()) {
+            if (e.getKey().equalsIgnoreCase(name)) return e.getValue();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,160 @@
+package gama.extension.GTFS;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Passages of the trips of the current service day at every stop (all the stop_times rows, not only the
+ * first stop of each trip), sorted by time in each stop.
+ *
+ * The passages are stored stop after stop in parallel int arrays (time, trip, stop_times row); the
+ * passages of a stop are a slice of these arrays, so the next departures from a stop or the passages of
+ * a time window are found by binary search in the slice. Times are the departure times (the arrival time
+ * when the departure is missing), in seconds since the start of the service day.
+ */
+public class StopPassageIndex {
+
+    private static final int DAY = 86400;
+
+    private final int[] stopStart; // passages du stop s : [stopStart[s], stopStart[s + 1])
+    private final int[] times;
+    private final int[] trips;
+    private final int[] rows;
+    private final BitSet lastStopOfTrip = new BitSet(); // passage au terminus : pas de départ
+
+    /**
+     * @param tripIndexes Trips of the service day (trip dictionary of the reader).
+     * @param stopTimes   The compiled timetable.
+     */
+    StopPassageIndex(int[] tripIndexes, StopTimesTable stopTimes) {
+        int nbStops = stopTimes.getStopCount();
+        stopStart = new int[nbStops + 1];
+        for (int t : tripIndexes) {
+            for (int row = stopTimes.getTripStart(t); row < stopTimes.getTripEnd(t); row++) {
+                if (passageTime(stopTimes, row) != StopTimesTable.NO_TIME) stopStart[stopTimes.getStopIndex(row) + 1]++;
+            }
+        }
+        for (int s = 0; s < nbStops; s++) stopStart[s + 1] += stopStart[s];
+
+        // tri par paquets sur le stop, puis tri (heure, ligne) dans chaque paquet
+        int n = stopStart[nbStops];
+        long[] keys = new long[n];
+        int[] cursor = Arrays.copyOf(stopStart, nbStops);
+        for (int t : tripIndexes) {
+            for (int row = stopTimes.getTripStart(t); row < stopTimes.getTripEnd(t); row++) {
+                int time = passageTime(stopTimes, row);
+                if (time != StopTimesTable.NO_TIME) keys[cursor[stopTimes.getStopIndex(row)]++] = ((long) time << 32) | row;
+            }
+        }
+        times = new int[n];
+        trips = new int[n];
+        rows = new int[n];
+        for (int s = 0; s < nbStops; s++) {
+            Arrays.sort(keys, stopStart[s], stopStart[s + 1]);
+        }
+        for (int k = 0; k < n; k++) {
+            int row = (int) keys[k];
+            int t = stopTimes.getTripIndex(row);
+            times[k] = (int) (keys[k] >>> 32);
+            trips[k] = t;
+            rows[k] = row;
+            if (row == stopTimes.getTripEnd(t) - 1) lastStopOfTrip.set(k);
+        }
+    }
+
+    private static int passageTime(StopTimesTable stopTimes, int row) {
+        int departure = stopTimes.getDepartureTime(row);
+        return departure != StopTimesTable.NO_TIME ? departure : stopTimes.getArrivalTime(row);
+    }
+
+    /** @return The number of passages, all stops included. */
+    public int size() {
+        return times.length;
+    }
+
+    /** @return The position of the first passage of the stop (its passages are [getStopStart(s), getStopEnd(s))). */
+    public int getStopStart(int stopIndex) {
+        return stopStart[stopIndex];
+    }
+
+    /** @return The position after the last passage of the stop. */
+    public int getStopEnd(int stopIndex) {
+        return stopStart[stopIndex + 1];
+    }
+
+    /** @return The time (seconds) of the k-th passage. */
+    public int getTime(int k) {
+        return times[k];
+    }
+
+    /** @return The trip index (trip dictionary of the reader) of the k-th passage. */
+    public int getTripIndex(int k) {
+        return trips[k];
+    }
+
+    /** @return The stop_times row of the k-th passage. */
+    public int getRow(int k) {
+        return rows[k];
+    }
+
+    /** @return True if the k-th passage is the arrival of its trip at its last stop (no departure). */
+    public boolean isLastStopOfTrip(int k) {
+        return lastStopOfTrip.get(k);
+    }
+
+    /** @return The position of the first passage of the stop at or after the time (getStopEnd(s) if none). */
+    public int firstAtOrAfter(int stopIndex, int time) {
+        int lo = stopStart[stopIndex], hi = stopStart[stopIndex + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] < time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return The positions of the next departures from the stop at or after the time (at most max,
+     *         arrivals at the last stop of a trip excluded), sorted by time.
+     */
+    public int[] nextDepartures(int stopIndex, int time, int max) {
+        int[] found = new int[Math.max(0, Math.min(max, getStopEnd(stopIndex) - getStopStart(stopIndex)))];
+        int n = 0;
+        for (int k = firstAtOrAfter(stopIndex, time); k < getStopEnd(stopIndex) && n < found.length; k++) {
+            if (!lastStopOfTrip.get(k)) found[n++] = k;
+        }
+        return n == found.length ? found : Arrays.copyOf(found, n);
+    }
+
+    /**
+     * @return The positions of the passages at the stop during [from, to], sorted by time. As in
+     *         DepartureSchedule.between, the timetable repeats every day: the passages of [from + 24h, to + 24h]
+     *         (times after 24:00:00, trips of the previous service day) come first. When to < from the window
+     *         crosses midnight: the passages of [from, to + 24h] come first, then those of [0, to].
+     */
+    public int[] passagesBetween(int stopIndex, int from, int to) {
+        if (to >= from) {
+            int[] latePassages = range(firstAtOrAfter(stopIndex, from + DAY), firstAfter(stopIndex, to + DAY), null);
+            return range(firstAtOrAfter(stopIndex, from), firstAfter(stopIndex, to), latePassages);
+        }
+        int[] latePassages = range(firstAtOrAfter(stopIndex, from), firstAfter(stopIndex, to + DAY), null);
+        return range(getStopStart(stopIndex), firstAfter(stopIndex, to), latePassages);
+    }
+
+    private int firstAfter(int stopIndex, int time) {
+        return time == Integer.MAX_VALUE ? getStopEnd(stopIndex) : firstAtOrAfter(stopIndex, time + 1);
+    }
+
+    private static int[] range(int start, int end, int[] prefix) {
+        int prefixLength = prefix == null ? 0 : prefix.length;
+        int[] positions = new int[prefixLength + Math.max(0, end - start)];
+        if (prefix != null) System.arraycopy(prefix, 0, positions, 0, prefixLength);
+        for (int k = start; k < end; k++) positions[prefixLength + k - start] = k;
+        return positions;
+    }
+
+    @Override
+    public String toString() {
+        return "StopPassageIndex{stops=" + (stopStart.length - 1) + ", passages=" + times.length + "}";
+    }
+}
@@ -0,0 +1,333 @@
+package gama.extension.GTFS;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled, columnar representation of stop_times.txt.
+ *
+ * Each stop_times row is stored as one slot in parallel primitive arrays (trip index, stop index,
+ * stop_sequence and shape_dist_traveled). Rows are grouped by trip (trips keep their order of first
+ * appearance in the file) and sorted by stop_sequence inside a trip, so that the rows of a trip are
+ * contiguous: they span [getTripStart(t), getTripEnd(t)).
+ *
+ * The arrival/departure times are not stored per row: each trip is a start time plus an offset vector
+ * shared by the trips with the same running times (see TripPatterns), and getArrivalTime/getDepartureTime
+ * read them from there.
+ */
+public class StopTimesTable {
+
+    /** Value stored for an empty or unparsable arrival/departure time. */
+    public static final int NO_TIME = -1;
+
+    private final int size;
+    private final int[] tripIndex;
+    private final int[] stopIndex;
+    private final int[] stopSequence;
+    private final float[] shapeDistTraveled; // NaN si absent
+
+    private final IdDictionary tripIds;
+    private final IdDictionary stopIds;
+    private final int[] tripStart; // longueur = nombre de trips + 1
+    private final TripPatterns patterns; // heures : départ du trip + vecteur de décalages partagé
+
+    private StopTimesTable(Builder b, int[] order, int[] tripStart) {
+        this.size = order.length;
+        this.tripIndex = new int[size];
+        this.stopIndex = new int[size];
+        this.stopSequence = new int[size];
+        this.shapeDistTraveled = new float[size];
+        int[] arrivalTime = new int[size]; // temporaires : compressés dans les patterns
+        int[] departureTime = new int[size];
+        for (int i = 0; i < size; i++) {
+            int src = order[i];
+            tripIndex[i] = b.tripIndex[src];
+            stopIndex[i] = b.stopIndex[src];
+            arrivalTime[i] = b.arrivalTime[src];
+            departureTime[i] = b.departureTime[src];
+            stopSequence[i] = b.stopSequence[src];
+            shapeDistTraveled[i] = b.shapeDistTraveled[src];
+        }
+        this.tripIds = b.tripIds;
+        this.stopIds = b.stopIds;
+        this.tripStart = tripStart;
+        this.patterns = new TripPatterns(tripStart, stopIndex, arrivalTime, departureTime);
+    }
+
+    /**
+     * Creates a table from columns that are already grouped by trip and sorted, and from their trip
+     * patterns (see GTFSFeedCache).
+     */
+    StopTimesTable(int[] tripIndex, int[] stopIndex, int[] stopSequence, float[] shapeDistTraveled,
+            String[] tripIds, String[] stopIds, int[] tripStart, TripPatterns patterns) {
+        this.size = tripIndex.length;
+        this.tripIndex = tripIndex;
+        this.stopIndex = stopIndex;
+        this.stopSequence = stopSequence;
+        this.shapeDistTraveled = shapeDistTraveled;
+        this.tripIds = new IdDictionary(tripIds.length);
+        for (String id : tripIds) this.tripIds.intern(id);
+        this.stopIds = new IdDictionary(stopIds.length);
+        for (String id : stopIds) this.stopIds.intern(id);
+        this.tripStart = tripStart;
+        this.patterns = patterns;
+    }
+
+    /**
+     * Compiles the rows of stop_times.txt, as read by the CSV reader, into a columnar table.
+     *
+     * @param rows      The rows of stop_times.txt (header excluded).
+     * @param headerMap The column name → index map of stop_times.txt.
+     * @return The compiled table, or null if the required columns are missing.
+     */
+    public static StopTimesTable compile(List<String[]> rows, Map<String, Integer> headerMap) {
+        if (rows == null || headerMap == null) return null;
+        Integer tripIdIdx = headerMap.get("trip_id");
+        Integer stopIdIdx = headerMap.get("stop_id");
+        Integer seqIdx = headerMap.get("stop_sequence");
+        Integer arrIdx = headerMap.get("arrival_time");
+        Integer depIdx = headerMap.get("departure_time");
+        Integer distIdx = headerMap.get("shape_dist_traveled");
+        if (tripIdIdx == null || stopIdIdx == null || seqIdx == null || depIdx == null) {
+            System.err.println("[ERROR] Required columns missing in stop_times.txt!");
+            return null;
+        }
+
+        Builder builder = new Builder(rows.size());
+        int invalid = 0;
+        for (String[] fields : rows) {
+            if (fields == null || fields.length <= Math.max(Math.max(tripIdIdx, stopIdIdx), Math.max(seqIdx, depIdx))) {
+                invalid++;
+                continue;
+            }
+            int seq;
+            try {
+                seq = Integer.parseInt(fields[seqIdx].trim());
+            } catch (NumberFormatException e) {
+                // stop_sequence manquant ou non numérique : ligne ignorée
+                invalid++;
+                continue;
+            }
+            int dep = parseTime(fields[depIdx]);
+            int arr = (arrIdx != null && fields.length > arrIdx) ? parseTime(fields[arrIdx]) : NO_TIME;
+            if (arr == NO_TIME) arr = dep;
+            if (dep == NO_TIME) dep = arr;
+            float dist = Float.NaN;
+            if (distIdx != null && fields.length > distIdx && !fields[distIdx].isBlank()) {
+                try {
+                    dist = Float.parseFloat(fields[distIdx].trim());
+                } catch (NumberFormatException ignore) {}
+            }
+            builder.add(cleanId(fields[tripIdIdx]), cleanId(fields[stopIdIdx]), arr, dep, seq, dist);
+        }
+        if (invalid > 0) {
+            System.out.println("[INFO] stop_times.txt : " + invalid + " lignes ignorées (incomplètes ou stop_sequence invalide)");
+        }
+        return builder.build();
+    }
+
+    /** Removes the quotes and blanks that some feeds leave around identifiers. */
+    static String cleanId(String raw) {
+        return raw.trim().replace("\"", "").replace("'", "");
+    }
+
+    /**
+     * Parses a GTFS time ("H:MM:SS" or "HH:MM:SS", hours may exceed 24) into seconds
+     * without allocating.
+     *
+     * @return The number of seconds since the start of the service day, or NO_TIME.
+     */
+    public static int parseTime(CharSequence s) {
+        if (s == null) return NO_TIME;
+        int len = s.length();
+        int i = 0;
+        while (i < len && s.charAt(i) <= ' ') i++;
+        while (len > i && s.charAt(len - 1) <= ' ') len--;
+        int total = 0;
+        int part = 0;
+        int digits = 0;
+        int colons = 0;
+        for (; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                part = part * 10 + (c - '0');
+                digits++;
+            } else if (c == ':' && digits > 0 && colons < 2) {
+                total = total * 60 + part;
+                part = 0;
+                digits = 0;
+                colons++;
+            } else {
+                return NO_TIME;
+            }
+        }
+        if (colons != 2 || digits == 0) return NO_TIME;
+        return total * 60 + part;
+    }
+
+    /** Formats a number of seconds as "HH:MM:SS" (hours may exceed 24), or "" for NO_TIME. */
+    public static String formatTime(int seconds) {
+        if (seconds == NO_TIME) return "";
+        int h = seconds / 3600;
+        int m = (seconds / 60) % 60;
+        int s = seconds % 60;
+        return (h < 10 ? "0" : "") + h + (m < 10 ? ":0" : ":") + m + (s < 10 ? ":0" : ":") + s;
+    }
+
+    // --- Accès par ligne
+
+    public int size() { return size; }
+    public int getTripIndex(int row) { return tripIndex[row]; }
+    public int getStopIndex(int row) { return stopIndex[row]; }
+    public int getArrivalTime(int row) { return patterns.getArrivalTime(tripIndex[row], row - tripStart[tripIndex[row]]); }
+    public int getDepartureTime(int row) { return patterns.getDepartureTime(tripIndex[row], row - tripStart[tripIndex[row]]); }
+    public int getStopSequence(int row) { return stopSequence[row]; }
+    public float getShapeDistTraveled(int row) { return shapeDistTraveled[row]; }
+    public String getStopId(int row) { return stopIds.get(stopIndex[row]); }
+
+    // --- Accès par trip
+
+    public int getTripCount() { return tripIds.size(); }
+    public String getTripId(int trip) { return tripIds.get(trip); }
+    public int getTripStart(int trip) { return tripStart[trip]; }
+    public int getTripEnd(int trip) { return tripStart[trip + 1]; }
+
+    /** @return The trip patterns, which hold the times of the rows. */
+    public TripPatterns getTripPatterns() { return patterns; }
+
+    /**
+     * @return The departure row of a trip: its first row, or the earliest departure among the rows
+     *         sharing the first stop_sequence.
+     */
+    public int getFirstRow(int trip) {
+        int start = tripStart[trip];
+        int end = tripStart[trip + 1];
+        int firstRow = start;
+        for (int row = start + 1; row < end && stopSequence[row] == stopSequence[start]; row++) {
+            if (Math.max(0, getDepartureTime(row)) < Math.max(0, getDepartureTime(firstRow))) firstRow = row;
+        }
+        return firstRow;
+    }
+
+    /** @return The index of the trip, or -1 if the trip has no stop_times. */
+    public int indexOfTrip(String tripId) {
+        return tripIds.indexOf(tripId);
+    }
+
+    /** @return The trip dictionary (trip index → trip_id). Must not be modified. */
+    public IdDictionary getTripDictionary() { return tripIds; }
+
+    // --- Accès par stop
+
+    public int getStopCount() { return stopIds.size(); }
+    public String getStopIdAt(int stop) { return stopIds.get(stop); }
+
+    /** @return The index of the stop, or -1 if the stop is never served. */
+    public int indexOfStop(String stopId) {
+        return stopIds.indexOf(stopId);
+    }
+
+    /** @return The stop dictionary (stop index → stop_id). Must not be modified. */
+    public IdDictionary getStopDictionary() { return stopIds; }
+
+    @Override
+    public String toString() {
+        return "StopTimesTable{rows=" + size + ", trips=" + tripIds.size() + ", stops=" + stopIds.size()
+                + ", patterns=" + patterns.getPatternCount() + ", offsetVectors=" + patterns.getOffsetVectorCount() + "}";
+    }
+
+    /**
+     * Accumulates stop_times rows in growable primitive arrays, then groups and sorts them.
+     */
+    public static class Builder {
+        private int count = 0;
+        private int[] tripIndex;
+        private int[] stopIndex;
+        private int[] arrivalTime;
+        private int[] departureTime;
+        private int[] stopSequence;
+        private float[] shapeDistTraveled;
+        private final IdDictionary tripIds = new IdDictionary();
+        private final IdDictionary stopIds = new IdDictionary();
+
+        public Builder(int expectedRows) {
+            int cap = Math.max(16, expectedRows);
+            tripIndex = new int[cap];
+            stopIndex = new int[cap];
+            arrivalTime = new int[cap];
+            departureTime = new int[cap];
+            stopSequence = new int[cap];
+            shapeDistTraveled = new float[cap];
+        }
+
+        public void add(String tripId, String stopId, int arrival, int departure, int sequence, float shapeDist) {
+            if (count == tripIndex.length) grow();
+            tripIndex[count] = tripIds.intern(tripId);
+            stopIndex[count] = stopIds.intern(stopId);
+            arrivalTime[count] = arrival;
+            departureTime[count] = departure;
+            stopSequence[count] = sequence;
+            shapeDistTraveled[count] = shapeDist;
+            count++;
+        }
+
+        /**
+         * Appends the rows of another builder (e.g. one filled by another thread), keeping their order.
+         */
+        public void addAll(Builder other) {
+            int[] tripMap = new int[other.tripIds.size()];
+            for (int t = 0; t < tripMap.length; t++) tripMap[t] = tripIds.intern(other.tripIds.get(t));
+            int[] stopMap = new int[other.stopIds.size()];
+            for (int s = 0; s < stopMap.length; s++) stopMap[s] = stopIds.intern(other.stopIds.get(s));
+            while (tripIndex.length < count + other.count) grow();
+            for (int i = 0; i < other.count; i++) {
+                tripIndex[count + i] = tripMap[other.tripIndex[i]];
+                stopIndex[count + i] = stopMap[other.stopIndex[i]];
+            }
+            System.arraycopy(other.arrivalTime, 0, arrivalTime, count, other.count);
+            System.arraycopy(other.departureTime, 0, departureTime, count, other.count);
+            System.arraycopy(other.stopSequence, 0, stopSequence, count, other.count);
+            System.arraycopy(other.shapeDistTraveled, 0, shapeDistTraveled, count, other.count);
+            count += other.count;
+        }
+
+        private void grow() {
+            int cap = tripIndex.length * 2;
+            tripIndex = Arrays.copyOf(tripIndex, cap);
+            stopIndex = Arrays.copyOf(stopIndex, cap);
+            arrivalTime = Arrays.copyOf(arrivalTime, cap);
+            departureTime = Arrays.copyOf(departureTime, cap);
+            stopSequence = Arrays.copyOf(stopSequence, cap);
+            shapeDistTraveled = Arrays.copyOf(shapeDistTraveled, cap);
+        }
+
+        public StopTimesTable build() {
+            int nbTrips = tripIds.size();
+            // 1. Tri par paquets (stable) sur l'index de trip
+            int[] tripStart = new int[nbTrips + 1];
+            for (int i = 0; i < count; i++) tripStart[tripIndex[i] + 1]++;
+            for (int t = 0; t < nbTrips; t++) tripStart[t + 1] += tripStart[t];
+            int[] cursor = Arrays.copyOf(tripStart, nbTrips);
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) order[cursor[tripIndex[i]]++] = i;
+
+            // 2. Tri par stop_sequence à l'intérieur de chaque trip (rarement nécessaire)
+            for (int t = 0; t < nbTrips; t++) {
+                int from = tripStart[t], to = tripStart[t + 1];
+                boolean sorted = true;
+                for (int i = from + 1; i < to && sorted; i++) {
+                    sorted = stopSequence[order[i - 1]] <= stopSequence[order[i]];
+                }
+                if (sorted) continue;
+                long[] keys = new long[to - from];
+                for (int i = from; i < to; i++) {
+                    keys[i - from] = ((long) stopSequence[order[i]] << 32) | (order[i] & 0xFFFFFFFFL);
+                }
+                Arrays.sort(keys);
+                for (int i = from; i < to; i++) order[i] = (int) keys[i - from];
+            }
+            return new StopTimesTable(this, order, tripStart);
+        }
+    }
+}
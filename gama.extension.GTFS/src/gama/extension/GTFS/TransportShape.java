@@ -1,51 +1,175 @@
 package gama.extension.GTFS;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import gama.core.metamodel.shape.GamaPoint;
 import gama.core.metamodel.shape.IShape;
 import gama.core.runtime.IScope;
 import gama.gaml.operators.spatial.SpatialCreation;
 import gama.core.util.GamaListFactory;
 import gama.core.util.IList;
+import GamaGTFSUtils.PolylineSimplifier;
 import GamaGTFSUtils.SpatialUtils;
 
 public class TransportShape {
 	private final String shapeId;
     private String routeId;
     private String tripId;
-    private final IList<GamaPoint> points; 
+    // Coordonnées brutes WGS84 (lon0, lat0, lon1, lat1...), projetées seulement à la demande
+    private double[] lonLat = new double[16];
+    private int nbPoints = 0;
+    private IList<GamaPoint> points; // points projetés (cache), null tant que la shape n'est pas projetée
     private int routeType = -1;
+    private IShape[] levelsOfDetail; // niveaux de détail déjà calculés (cache), voir getLevelOfDetail
+
+    /** Tolerances (metres) of the levels of detail: level 0 is the full shape, levels 1 to 3 are simplified. */
+    public static final double[] LOD_TOLERANCES = { 0.0, 5.0, 25.0, 100.0 };
 
     public TransportShape(String shapeId, String routeId) {
         this.shapeId = shapeId;
         this.routeId = routeId;
-        this.points = GamaListFactory.create();
+    }
+
+    /** Adds a point in EPSG:4326. It is projected to the GAMA CRS only when the geometry is needed. */
+    public synchronized void addPoint(double lat, double lon) {
+        if (2 * nbPoints == lonLat.length) lonLat = Arrays.copyOf(lonLat, 2 * lonLat.length);
+        lonLat[2 * nbPoints] = lon;
+        lonLat[2 * nbPoints + 1] = lat;
+        nbPoints++;
+        points = null;
+        levelsOfDetail = null;
+    }
+
+    /** Replaces the points by packed EPSG:4326 coordinates (lon0, lat0, lon1, lat1...), used as is. */
+    synchronized void setRawCoordinates(double[] lonLat) {
+        this.lonLat = lonLat;
+        this.nbPoints = lonLat.length / 2;
+        this.points = null;
+        this.levelsOfDetail = null;
     }
 
     public void addPoint(double lat, double lon, IScope scope) {
-        points.add(SpatialUtils.toGamaCRS(scope, lat, lon));
+        addPoint(lat, lon);
     }
 
     public IShape generateShape(IScope scope) {
-        if (points.isEmpty()) {
+        IList<GamaPoint> projected = getPoints(scope);
+        if (projected.isEmpty()) {
             return null;
         }
 
         IList<IShape> shapePoints = GamaListFactory.create();
-        for (GamaPoint point : points) {
+        for (GamaPoint point : projected) {
             shapePoints.add(point);
         }
 
         return SpatialCreation.line(scope, shapePoints);
     }
 
+    /**
+     * @return A line through the points kept by a Douglas-Peucker simplification of the shape (see
+     *         PolylineSimplifier), projected in the GAMA CRS; null if the shape has no point.
+     * @param toleranceMeters - Largest distance between the shape and the simplified line, in metres.
+     */
+    public IShape generateSimplifiedShape(IScope scope, double toleranceMeters) {
+        double[] simplified = PolylineSimplifier.simplify(getRawCoordinates(), toleranceMeters);
+        if (simplified.length == 0) {
+            return null;
+        }
+        double[] xy = SpatialUtils.toGamaCRS(scope, simplified);
+        IList<IShape> shapePoints = GamaListFactory.create();
+        for (int i = 0; i < xy.length / 2; i++) {
+            shapePoints.add(new GamaPoint(xy[2 * i], xy[2 * i + 1], 0.0));
+        }
+        return SpatialCreation.line(scope, shapePoints);
+    }
+
+    /**
+     * @return The geometry of the shape at a level of detail (see LOD_TOLERANCES; higher levels give the
+     *         coarsest one), computed at the first call and then cached; null if the shape has no point.
+     */
+    public synchronized IShape getLevelOfDetail(IScope scope, int level) {
+        int l = Math.max(0, Math.min(level, LOD_TOLERANCES.length - 1));
+        if (levelsOfDetail == null) levelsOfDetail = new IShape[LOD_TOLERANCES.length];
+        if (levelsOfDetail[l] == null) {
+            levelsOfDetail[l] = l == 0 ? generateShape(scope) : generateSimplifiedShape(scope, LOD_TOLERANCES[l]);
+        }
+        return levelsOfDetail[l];
+    }
+
     public String getShapeId() { 
     	return shapeId; 
     	}
 
-    public IList<GamaPoint> getPoints() {
+    /** @return The points projected in the GAMA CRS, projected at the first call and then cached. */
+    public synchronized IList<GamaPoint> getPoints(IScope scope) {
+        if (points == null) setProjectedPoints(SpatialUtils.toGamaCRS(scope, getRawCoordinates()));
         return points;
     }
 
+    /**
+     * @return The points projected in the GAMA CRS, or an empty list if the shape has not been projected yet
+     *         (see getPoints(scope)).
+     */
+    public synchronized IList<GamaPoint> getPoints() {
+        return points != null ? points : GamaListFactory.create();
+    }
+
+    /** @return True if the projected points are cached. */
+    public synchronized boolean isProjected() {
+        return points != null;
+    }
+
+    /** @return The number of points of the shape. */
+    public synchronized int getPointCount() {
+        return nbPoints;
+    }
+
+    /** @return A copy of the raw coordinates in EPSG:4326: lon0, lat0, lon1, lat1... */
+    public synchronized double[] getRawCoordinates() {
+        return Arrays.copyOf(lonLat, 2 * nbPoints);
+    }
+
+    private void setProjectedPoints(double[] xy) {
+        IList<GamaPoint> projected = GamaListFactory.create();
+        for (int i = 0; i < xy.length / 2; i++) projected.add(new GamaPoint(xy[2 * i], xy[2 * i + 1], 0.0));
+        points = projected;
+    }
+
+    /**
+     * Projects the shapes not projected yet in one bulk projection (SpatialUtils.toGamaCRS) instead of one
+     * projection per shape, e.g. before creating their agents.
+     */
+    public static void projectAll(IScope scope, List<TransportShape> shapes) {
+        List<TransportShape> pending = new ArrayList<>();
+        List<double[]> raws = new ArrayList<>();
+        int total = 0;
+        for (TransportShape shape : shapes) {
+            if (shape == null || shape.isProjected()) continue;
+            double[] raw = shape.getRawCoordinates();
+            pending.add(shape);
+            raws.add(raw);
+            total += raw.length;
+        }
+        if (pending.isEmpty()) return;
+        double[] all = new double[total];
+        int[] offsets = new int[pending.size() + 1];
+        for (int s = 0; s < pending.size(); s++) {
+            System.arraycopy(raws.get(s), 0, all, offsets[s], raws.get(s).length);
+            offsets[s + 1] = offsets[s] + raws.get(s).length;
+        }
+        double[] xy = SpatialUtils.toGamaCRS(scope, all);
+        for (int s = 0; s < pending.size(); s++) {
+            TransportShape shape = pending.get(s);
+            synchronized (shape) {
+                // points ajoutés entretemps : la shape sera projetée à la demande
+                if (2 * shape.nbPoints == offsets[s + 1] - offsets[s]) shape.setProjectedPoints(Arrays.copyOfRange(xy, offsets[s], offsets[s + 1]));
+            }
+        }
+    }
+
     public String getRouteId() {
         return routeId;
     }
@@ -77,6 +201,6 @@ public class TransportShape {
 
     @Override
     public String toString() {
-        return "Shape ID: " + shapeId + ", Route ID: " + routeId + ", Route Type: " + routeType + ", Points: " + points.size();
+        return "Shape ID: " + shapeId + ", Route ID: " + routeId + ", Route Type: " + routeType + ", Points: " + nbPoints;
     }
 }
@@ -1,5 +1,8 @@
 package gama.extension.GTFS;
 
+import java.util.Arrays;
+
+import gama.core.metamodel.agent.IAgent;
 import gama.core.metamodel.shape.GamaPoint;
 import gama.core.runtime.IScope;
 import gama.core.util.GamaMapFactory;
@@ -19,20 +22,29 @@ public class TransportStop {
     private GamaPoint location;
     private int routeType = -1;
     private int tripNumber = 0; 
-    private IMap<String, IList<GamaPair<String, String>>> departureTripsInfo;
+    private IMap<String, IList<GamaPair<String, Integer>>> departureTripsInfo;
+    // Trips desservant ce stop (indices du dictionnaire de trips du reader) ; tripShapeMap en est une vue
+    private int[] servedTrips = new int[4];
+    private int servedTripCount = 0;
+    private TransportTrip[] tripsByIndex;
     private IMap<String, String> tripShapeMap;
     private IMap<String, IList<Double>> departureShapeDistances;
+    private IAgent agent; // agent créé pour ce stop (TransportStopCreator)
 
-    @SuppressWarnings("unchecked")
     public TransportStop(String stopId, String stopName, double stopLat, double stopLon, IScope scope) {
+        // Conversion pour la simulation GAMA (en CRS interne)
+        this(stopId, stopName, stopLat, stopLon, SpatialUtils.toGamaCRS(scope, stopLat, stopLon));
+    }
+
+    /** Stop whose location is already projected in the GAMA CRS (bulk projection of the reader). */
+    public TransportStop(String stopId, String stopName, double stopLat, double stopLon, GamaPoint location) {
         this.stopId = stopId;
         this.stopName = stopName;
         this.stopLat = stopLat;
         this.stopLon = stopLon;
-        // Conversion pour la simulation GAMA (en CRS interne)
-        this.location = SpatialUtils.toGamaCRS(scope, stopLat, stopLon);
+        this.location = location;
         this.departureTripsInfo = null;
-        this.tripShapeMap = GamaMapFactory.create(Types.STRING, Types.STRING);
+        this.tripShapeMap = null;
         this.departureShapeDistances = GamaMapFactory.create(Types.STRING, Types.LIST);
         //System.out.println("[TEST] Coordonnées projetées pour " + stopName + ": " + location);
     }
@@ -48,13 +60,13 @@ public class TransportStop {
     public double getStopLat() { return stopLat; }
     public double getStopLon() { return stopLon; }
 
-    public IMap<String, IList<GamaPair<String, String>>> getDepartureTripsInfo() { return departureTripsInfo; }
+    public IMap<String, IList<GamaPair<String, Integer>>> getDepartureTripsInfo() { return departureTripsInfo; }
 
-    public void addStopPairs(String tripId, IList<GamaPair<String, String>> stopPairs) {
+    public void addStopPairs(String tripId, IList<GamaPair<String, Integer>> stopPairs) {
         departureTripsInfo.put(tripId, stopPairs);
     }
 
-    public void setDepartureTripsInfo(IMap<String, IList<GamaPair<String, String>>> departureTripsInfo) {
+    public void setDepartureTripsInfo(IMap<String, IList<GamaPair<String, Integer>>> departureTripsInfo) {
         this.departureTripsInfo = departureTripsInfo;
     }
 
@@ -65,9 +77,41 @@ public class TransportStop {
         }
     }
 
-    public IMap<String, String> getTripShapeMap() { return tripShapeMap; }
+    /**
+     * @return The map trip_id → shape_id of the trips serving this stop, built from the trip indices
+     *         the first time it is asked for.
+     */
+    @SuppressWarnings("unchecked")
+    public IMap<String, String> getTripShapeMap() {
+        if (tripShapeMap == null) {
+            tripShapeMap = GamaMapFactory.create(Types.STRING, Types.STRING);
+            for (int i = 0; i < servedTripCount; i++) putTripShape(servedTrips[i]);
+        }
+        return tripShapeMap;
+    }
+
+    public void addTripShapePair(String tripId, String shapeId) { getTripShapeMap().put(tripId, shapeId); }
+
+    /** Records a trip serving this stop, by its index in the trip dictionary of the reader. */
+    public void addServedTrip(int tripIndex) {
+        if (servedTripCount > 0 && servedTrips[servedTripCount - 1] == tripIndex) return;
+        if (servedTripCount == servedTrips.length) servedTrips = Arrays.copyOf(servedTrips, servedTripCount * 2);
+        servedTrips[servedTripCount++] = tripIndex;
+        if (tripShapeMap != null) putTripShape(tripIndex);
+    }
+
+    /** @return The indices of the trips serving this stop, in the order they were recorded. */
+    public int[] getServedTripIndexes() {
+        return Arrays.copyOf(servedTrips, servedTripCount);
+    }
 
-    public void addTripShapePair(String tripId, String shapeId) { this.tripShapeMap.put(tripId, shapeId); }
+    /** Sets the trips of the reader, indexed by trip index (shared by all the stops). */
+    public void setTripsByIndex(TransportTrip[] tripsByIndex) { this.tripsByIndex = tripsByIndex; }
+
+    private void putTripShape(int tripIndex) {
+        TransportTrip trip = tripsByIndex != null && tripIndex < tripsByIndex.length ? tripsByIndex[tripIndex] : null;
+        if (trip != null) tripShapeMap.put(trip.getTripId(), trip.getShapeId());
+    }
     
     public IMap<String, IList<Double>> getDepartureShapeDistances() {
         return departureShapeDistances;
@@ -77,6 +121,11 @@ public class TransportStop {
         departureShapeDistances.put(tripId, distances);
     }
     
+    /** @return The agent created for this stop, or null if no agent was created. */
+    public IAgent getAgent() { return agent; }
+
+    public void setAgent(IAgent agent) { this.agent = agent; }
+
     public int getTripNumber() {
         return tripNumber;
     }
@@ -93,7 +142,7 @@ public class TransportStop {
         return "TransportStop{id='" + stopId + "', name='" + stopName
                 + "', location={" + locationStr + "}, "
                 + "routeType=" + routeType + ", "
-                + "tripShapeMap=" + tripShapeMap + "}";
+                + "tripShapeMap=" + getTripShapeMap() + "}";
     }
 
     public GamaPoint getGeometry() {
@@ -1,5 +1,6 @@
 package gama.extension.GTFS;
 
+import java.util.Arrays;
 import java.util.Map;
 
 import gama.core.util.GamaListFactory;
@@ -13,9 +14,13 @@ public class TransportTrip {
     private String serviceId; 
     private String tripId;
     private String shapeId;
+    private String blockId; // véhicule partagé avec les trips suivants (block_id de trips.txt)
     private int routeType = -1;
-    private IList<String> stopIdsInOrder; 
-    private IList<IMap<String, Object>> stopDetails; 
+    // Arrêts du trip dans l'ordre, en tableaux parallèles (une map par arrêt coûtait trop en mémoire)
+    private String[] stopIds = new String[0];
+    private int[] departureTimes = new int[0];
+    private float[] shapeDistTraveled = new float[0];
+    private int nbStops = 0;
 
     // Constructor
     public TransportTrip(String routeId, String serviceId, String tripId, int directionId, String shapeId) {
@@ -23,8 +28,6 @@ public class TransportTrip {
         this.serviceId = serviceId;
         this.tripId = tripId;
         this.shapeId = shapeId;
-        this.stopIdsInOrder = GamaListFactory.create();
-        this.stopDetails = GamaListFactory.create();
     }
     
     public int getRouteType() {  
@@ -35,40 +38,96 @@ public class TransportTrip {
         this.routeType = routeType;
     }
 
-    // Add a stop_id in sequence order
-    public void addStop(String stopId) {
-        stopIdsInOrder.add(stopId);
+    /**
+     * Adds the next stop of the trip.
+     *
+     * @param departureTime     Departure time in seconds, or StopTimesTable.NO_TIME.
+     * @param shapeDistTraveled Distance along the shape (0 if unknown).
+     */
+    public void addStop(String stopId, int departureTime, double shapeDistTraveled) {
+        if (nbStops == stopIds.length) {
+            int capacity = Math.max(4, nbStops * 2);
+            stopIds = Arrays.copyOf(stopIds, capacity);
+            departureTimes = Arrays.copyOf(departureTimes, capacity);
+            this.shapeDistTraveled = Arrays.copyOf(this.shapeDistTraveled, capacity);
+        }
+        stopIds[nbStops] = stopId;
+        departureTimes[nbStops] = departureTime;
+        this.shapeDistTraveled[nbStops] = (float) shapeDistTraveled;
+        nbStops++;
     }
 
-    // Add stop details (stopId and departureTime)
+    // Add stop details (stopId and departureTime "HH:MM:SS")
     public void addStopDetail(String stopId, String departureTime, double shapeDistTraveled) {
-        @SuppressWarnings("unchecked")
-		IMap<String, Object> stopDetail = GamaMapFactory.create();
-        stopDetail.put("stopId", stopId);
-        stopDetail.put("departureTime", departureTime);
-        stopDetail.put("shapeDistTraveled", shapeDistTraveled); // 🔥 ajoute la distance
-        stopDetails.add(stopDetail);
+        addStop(stopId, StopTimesTable.parseTime(departureTime), shapeDistTraveled);
     }
 
-
-    // Set stop details
+    /** Replaces the stops of the trip by those of a list of stop details (maps as given by getStopDetails). */
     public void setStopDetails(IList<IMap<String, Object>> stopDetails) {
-        this.stopDetails = stopDetails;
+        clearStops();
+        for (IMap<String, Object> detail : stopDetails) {
+            Object departure = detail.get("departureTime");
+            Object dist = detail.get("shapeDistTraveled");
+            addStop((String) detail.get("stopId"), departure == null ? StopTimesTable.NO_TIME : StopTimesTable.parseTime(departure.toString()),
+                    dist instanceof Number ? ((Number) dist).doubleValue() : 0.0);
+        }
     }
 
-    // Get stop details
+    /**
+     * @return The stops of the trip as maps with the keys stopId, departureTime ("HH:MM:SS") and
+     *         shapeDistTraveled, built at each call from the arrays of the trip.
+     */
+    @SuppressWarnings("unchecked")
     public IList<IMap<String, Object>> getStopDetails() {
+        IList<IMap<String, Object>> stopDetails = GamaListFactory.create();
+        for (int k = 0; k < nbStops; k++) {
+            IMap<String, Object> stopDetail = GamaMapFactory.create();
+            stopDetail.put("stopId", stopIds[k]);
+            stopDetail.put("departureTime", StopTimesTable.formatTime(departureTimes[k]));
+            stopDetail.put("shapeDistTraveled", (double) shapeDistTraveled[k]);
+            stopDetails.add(stopDetail);
+        }
         return stopDetails;
     }
 
-    // Get stops in order
+    /** @return The stop_ids of the trip in order, as a new list. */
     public IList<String> getStopsInOrder() {
-        return stopIdsInOrder;
+        IList<String> stops = GamaListFactory.create();
+        for (int k = 0; k < nbStops; k++) stops.add(stopIds[k]);
+        return stops;
     }
 
-    // Set the entire list of stop_ids
+    // Set the entire list of stop_ids (times and distances unknown)
     public void setStopIdsInOrder(IList<String> stopIdsInOrder) {
-        this.stopIdsInOrder = stopIdsInOrder;
+        clearStops();
+        for (String stopId : stopIdsInOrder) addStop(stopId, StopTimesTable.NO_TIME, 0.0);
+    }
+
+    /** @return The number of stops of the trip. */
+    public int getStopCount() { return nbStops; }
+
+    /** @return The stop_id of the k-th stop. */
+    public String getStopId(int k) { return stopIds[k]; }
+
+    /** @return The departure time (seconds) at the k-th stop, or StopTimesTable.NO_TIME. */
+    public int getDepartureTime(int k) { return departureTimes[k]; }
+
+    /** @return The distance along the shape at the k-th stop (0 if unknown). */
+    public double getShapeDistTraveled(int k) { return shapeDistTraveled[k]; }
+
+    private void clearStops() {
+        stopIds = new String[0];
+        departureTimes = new int[0];
+        shapeDistTraveled = new float[0];
+        nbStops = 0;
+    }
+
+    /** Trims the arrays to the number of stops once the trip is complete. */
+    void trimStops() {
+        if (nbStops == stopIds.length) return;
+        stopIds = Arrays.copyOf(stopIds, nbStops);
+        departureTimes = Arrays.copyOf(departureTimes, nbStops);
+        shapeDistTraveled = Arrays.copyOf(shapeDistTraveled, nbStops);
     }
 
     // Getters and Setters for trip attributes
@@ -100,6 +159,11 @@ public class TransportTrip {
     public String getShapeId() { return shapeId; }
 
     public void setShapeId(String shapeId) { this.shapeId = shapeId; }
+
+    /** @return The block_id of the trip (trips run in sequence by the same vehicle), or null. */
+    public String getBlockId() { return blockId; }
+
+    public void setBlockId(String blockId) { this.blockId = blockId; }
     
     /**
      * Returns a list of TransportStop objects corresponding to the stop IDs in this trip.
@@ -109,7 +173,8 @@ public class TransportTrip {
      */
     public IList<TransportStop> getStops(Map<String, TransportStop> stopsMap) {
         IList<TransportStop> stops = GamaListFactory.create();
-        for (String stopId : stopIdsInOrder) {
+        for (int k = 0; k < nbStops; k++) {
+            String stopId = stopIds[k];
             TransportStop stop = stopsMap.get(stopId);
             if (stop != null) {
                 stops.add(stop);
@@ -123,6 +188,6 @@ public class TransportTrip {
     // Display trip information
     @Override
     public String toString() {
-        return "Trip ID: " + tripId + ", Route ID: " + routeId + ", Stops: " + stopIdsInOrder.size() + " stops.";
+        return "Trip ID: " + tripId + ", Route ID: " + routeId + ", Stops: " + nbStops + " stops.";
     }
 }
@@ -0,0 +1,103 @@
+package gama.extension.GTFS;
+
+import java.util.Arrays;
+
+/**
+ * Interval tree of the [start, end] times of the trips of a service day (first departure, last arrival),
+ * to find the trips running at a time or during a window without looking at every trip.
+ *
+ * The intervals are sorted by start time and stored as an implicit balanced tree: the node of a range of
+ * the arrays is its middle element, which also keeps the latest end of its range. A query skips the
+ * ranges ending before the window and stops at the first node starting after it.
+ * Times are in seconds since the start of the service day: trips running after midnight keep their
+ * GTFS times after 24:00:00.
+ */
+public class TripIntervalIndex {
+
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] trips;
+    private final int[] maxEnd; // fin la plus tardive du sous-arbre dont l'élément est la racine
+    private final int maxDuration;
+
+    /**
+     * @param tripIndexes Trips of the index (trip dictionary of the reader).
+     * @param startOf     Start time of each trip of tripIndexes.
+     * @param endOf       End time of each trip of tripIndexes.
+     */
+    TripIntervalIndex(int[] tripIndexes, int[] startOf, int[] endOf) {
+        int n = tripIndexes.length;
+        long[] keys = new long[n];
+        for (int k = 0; k < n; k++) keys[k] = ((long) startOf[k] << 32) | k;
+        Arrays.sort(keys);
+        starts = new int[n];
+        ends = new int[n];
+        trips = new int[n];
+        int longest = 0;
+        for (int i = 0; i < n; i++) {
+            int from = (int) keys[i];
+            starts[i] = startOf[from];
+            ends[i] = Math.max(startOf[from], endOf[from]);
+            trips[i] = tripIndexes[from];
+            longest = Math.max(longest, ends[i] - starts[i]);
+        }
+        maxDuration = longest;
+        maxEnd = new int[n];
+        buildMaxEnd(0, n);
+    }
+
+    private int buildMaxEnd(int lo, int hi) {
+        if (lo >= hi) return Integer.MIN_VALUE;
+        int mid = (lo + hi) >>> 1;
+        maxEnd[mid] = Math.max(ends[mid], Math.max(buildMaxEnd(lo, mid), buildMaxEnd(mid + 1, hi)));
+        return maxEnd[mid];
+    }
+
+    /** @return The number of trips in the index. */
+    public int size() {
+        return trips.length;
+    }
+
+    /** @return The longest duration (seconds) of a trip of the index. */
+    public int getMaxDuration() {
+        return maxDuration;
+    }
+
+    /** @return The trips running at the time (start <= time <= end), sorted by start time. */
+    public int[] runningAt(int time) {
+        return overlapping(time, time);
+    }
+
+    /** @return The trips running during [from, to] (start <= to and end >= from), sorted by start time. */
+    public int[] overlapping(int from, int to) {
+        int[] found = new int[firstStartingAfter(to)]; // au plus les trips commencés avant to
+        int n = collect(0, trips.length, from, to, found, 0);
+        return Arrays.copyOf(found, n);
+    }
+
+    /** Adds the trips of the range overlapping [from, to] in start order; returns the new count. */
+    private int collect(int lo, int hi, int from, int to, int[] found, int n) {
+        if (lo >= hi) return n;
+        int mid = (lo + hi) >>> 1;
+        if (maxEnd[mid] < from) return n;
+        n = collect(lo, mid, from, to, found, n);
+        if (starts[mid] > to) return n; // le sous-arbre droit commence encore plus tard
+        if (ends[mid] >= from) found[n++] = trips[mid];
+        return collect(mid + 1, hi, from, to, found, n);
+    }
+
+    private int firstStartingAfter(int time) {
+        int lo = 0, hi = starts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] <= time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    @Override
+    public String toString() {
+        return "TripIntervalIndex{trips=" + trips.length + ", maxDuration=" + StopTimesTable.formatTime(maxDuration) + "}";
+    }
+}
@@ -0,0 +1,162 @@
+package gama.extension.GTFS;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Trip patterns of the timetable: the trips serving the same sequence of stops share a pattern, whose
+ * stop list is stored once. Each trip is then a start time plus a vector of arrival/departure offsets
+ * from that start, and identical vectors (trips of a pattern running with the same running times) are
+ * stored once too.
+ *
+ * This is where the times of the timetable are stored: StopTimesTable keeps no arrival/departure
+ * column and serves the times of its rows from here, so the trip end times, the trip states and the
+ * stop passages are all read as start time + offset. Built in one pass over the rows when the table is
+ * compiled (or read back from GTFSFeedCache). Stop and trip indices are those of the table (and of the
+ * dictionaries of GTFS_reader).
+ */
+public class TripPatterns {
+
+    /** Missing time in an offset vector (stop_times row without arrival or departure time). */
+    private static final int NO_OFFSET = Integer.MIN_VALUE;
+
+    private final int[][] stopsOfPattern;
+    private final int[][] tripsOfPattern; // triés par heure de départ
+    private final int[][] offsetVectors;  // par arrêt : décalage d'arrivée, décalage de départ
+    private final int[] patternOfTrip;
+    private final int[] startOfTrip;
+    private final int[] offsetsOfTrip;
+
+    /**
+     * Builds the patterns from the rows of a stop_times table, grouped by trip.
+     *
+     * @param tripStart     Rows of trip t: [tripStart[t], tripStart[t + 1]).
+     * @param stopIndex     Stop of each row.
+     * @param arrivalTime   Arrival time of each row, or StopTimesTable.NO_TIME.
+     * @param departureTime Departure time of each row, or StopTimesTable.NO_TIME.
+     */
+    TripPatterns(int[] tripStart, int[] stopIndex, int[] arrivalTime, int[] departureTime) {
+        int nbTrips = tripStart.length - 1;
+        patternOfTrip = new int[nbTrips];
+        startOfTrip = new int[nbTrips];
+        offsetsOfTrip = new int[nbTrips];
+        Map<IntSequence, Integer> patterns = new HashMap<>();
+        Map<IntSequence, Integer> vectors = new HashMap<>();
+
+        for (int t = 0; t < nbTrips; t++) {
+            int start = tripStart[t];
+            int n = tripStart[t + 1] - start;
+            Integer p = patterns.putIfAbsent(new IntSequence(Arrays.copyOfRange(stopIndex, start, start + n)), patterns.size());
+            patternOfTrip[t] = p != null ? p : patterns.size() - 1;
+
+            int departure = n == 0 ? StopTimesTable.NO_TIME : departureTime[start];
+            int startTime = departure != StopTimesTable.NO_TIME ? departure : (n == 0 ? 0 : Math.max(0, arrivalTime[start]));
+            startOfTrip[t] = startTime;
+            int[] offsets = new int[2 * n];
+            for (int k = 0; k < n; k++) {
+                offsets[2 * k] = offset(arrivalTime[start + k], startTime);
+                offsets[2 * k + 1] = offset(departureTime[start + k], startTime);
+            }
+            Integer v = vectors.putIfAbsent(new IntSequence(offsets), vectors.size());
+            offsetsOfTrip[t] = v != null ? v : vectors.size() - 1;
+        }
+
+        stopsOfPattern = new int[patterns.size()][];
+        for (Map.Entry<IntSequence, Integer> e : patterns.entrySet()) stopsOfPattern[e.getValue()] = e.getKey().values;
+        offsetVectors = new int[vectors.size()][];
+        for (Map.Entry<IntSequence, Integer> e : vectors.entrySet()) offsetVectors[e.getValue()] = e.getKey().values;
+        tripsOfPattern = sortTripsOfPatterns();
+    }
+
+    /**
+     * Creates the patterns from arrays written by GTFSFeedCache (see getOffsetVector).
+     */
+    TripPatterns(int[][] stopsOfPattern, int[] patternOfTrip, int[] startOfTrip, int[] offsetsOfTrip, int[][] offsetVectors) {
+        this.stopsOfPattern = stopsOfPattern;
+        this.patternOfTrip = patternOfTrip;
+        this.startOfTrip = startOfTrip;
+        this.offsetsOfTrip = offsetsOfTrip;
+        this.offsetVectors = offsetVectors;
+        this.tripsOfPattern = sortTripsOfPatterns();
+    }
+
+    /** @return The trips of each pattern sorted by start time. */
+    private int[][] sortTripsOfPatterns() {
+        int[] tripCount = new int[stopsOfPattern.length];
+        for (int p : patternOfTrip) tripCount[p]++;
+        int[][] tripsOfPattern = new int[stopsOfPattern.length][];
+        for (int p = 0; p < tripsOfPattern.length; p++) tripsOfPattern[p] = new int[tripCount[p]];
+        int[] cursor = new int[stopsOfPattern.length];
+        for (int t = 0; t < patternOfTrip.length; t++) tripsOfPattern[patternOfTrip[t]][cursor[patternOfTrip[t]]++] = t;
+        for (int[] trips : tripsOfPattern) {
+            long[] keys = new long[trips.length];
+            for (int i = 0; i < trips.length; i++) keys[i] = ((long) startOfTrip[trips[i]] << 32) | trips[i];
+            Arrays.sort(keys);
+            for (int i = 0; i < trips.length; i++) trips[i] = (int) keys[i];
+        }
+        return tripsOfPattern;
+    }
+
+    private static int offset(int time, int start) {
+        return time == StopTimesTable.NO_TIME ? NO_OFFSET : time - start;
+    }
+
+    /** @return The number of patterns. */
+    public int getPatternCount() {
+        return stopsOfPattern.length;
+    }
+
+    /** @return The number of distinct offset vectors (shared by the trips with the same running times). */
+    public int getOffsetVectorCount() {
+        return offsetVectors.length;
+    }
+
+    /** @return The pattern of a trip. */
+    public int getPatternOf(int tripIndex) {
+        return patternOfTrip[tripIndex];
+    }
+
+    /** @return The stop indices of a pattern, in order (shared array, not to be modified). */
+    public int[] getStops(int pattern) {
+        return stopsOfPattern[pattern];
+    }
+
+    /** @return The trips of a pattern sorted by start time (shared array, not to be modified). */
+    public int[] getTrips(int pattern) {
+        return tripsOfPattern[pattern];
+    }
+
+    /** @return The start time (seconds) of a trip: departure time of its first row. */
+    public int getStartTime(int tripIndex) {
+        return startOfTrip[tripIndex];
+    }
+
+    /** @return The arrival/departure offsets of an offset vector (shared array, not to be modified). */
+    int[] getOffsetVector(int vector) {
+        return offsetVectors[vector];
+    }
+
+    /** @return The offset vector of a trip, shared by the trips with the same running times. */
+    public int getOffsetVectorOf(int tripIndex) {
+        return offsetsOfTrip[tripIndex];
+    }
+
+    /** @return The arrival time (seconds) of a trip at the k-th stop of its pattern, or StopTimesTable.NO_TIME. */
+    public int getArrivalTime(int tripIndex, int k) {
+        int offset = offsetVectors[offsetsOfTrip[tripIndex]][2 * k];
+        return offset == NO_OFFSET ? StopTimesTable.NO_TIME : startOfTrip[tripIndex] + offset;
+    }
+
+    /** @return The departure time (seconds) of a trip at the k-th stop of its pattern, or StopTimesTable.NO_TIME. */
+    public int getDepartureTime(int tripIndex, int k) {
+        int offset = offsetVectors[offsetsOfTrip[tripIndex]][2 * k + 1];
+        return offset == NO_OFFSET ? StopTimesTable.NO_TIME : startOfTrip[tripIndex] + offset;
+    }
+
+    @Override
+    public String toString() {
+        return "TripPatterns{trips=" + patternOfTrip.length + ", patterns=" + stopsOfPattern.length
+                + ", offsetVectors=" + offsetVectors.length + "}";
+    }
+}
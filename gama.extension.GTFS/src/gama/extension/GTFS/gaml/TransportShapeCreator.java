@@ -27,6 +27,8 @@ public class TransportShapeCreator implements GTFSAgentCreator {
 	@Override
 	public void addInits(IScope scope, List<Map<String, Object>> inits, Integer max) {
 	    int limit = (max != null) ? Math.min(max, shapes.size()) : shapes.size();
+	    // Projection groupée des seules shapes dont on crée les agents
+	    TransportShape.projectAll(scope, shapes.subList(0, limit));
 
 	    for (int i = 0; i < limit; i++) {
 	        TransportShape shape = shapes.get(i);
@@ -45,7 +47,8 @@ public class TransportShapeCreator implements GTFSAgentCreator {
 	        map.put("routeType", routeType);
 	        map.put("routeId", shape.getRouteId());
 	        map.put("tripId", shape.getTripId());
-	        map.put("shape_points", shape.getPoints());
+	        map.put("shape_points", shape.getPoints(scope));
+	        map.put("gtfs_shape", shape); // pour shape_lod
 
 	        inits.add(map);
 	    }
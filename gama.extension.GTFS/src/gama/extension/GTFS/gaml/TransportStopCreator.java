@@ -31,6 +31,8 @@ public class TransportStopCreator implements GTFSAgentCreator {
 
         for (int i = 0; i < limit; i++) {
             TransportStop stop = stops.get(i);
+            // Chaque agent reçoit sa map, même vide : elle sera remplie au changement de journée de service
+            stop.ensureDepartureTripsInfo();
             Map<String, Object> stopInit = new HashMap<>();
             stopInit.put("stopId", stop.getStopId());
             stopInit.put("stopName", stop.getStopName());
@@ -51,32 +53,36 @@ public class TransportStopCreator implements GTFSAgentCreator {
         @SuppressWarnings("unchecked")
         IMap<String, IAgent> stopIdToAgentMap = GamaMapFactory.create(Types.STRING, Types.AGENT);
 
+        Map<String, TransportStop> stopsById = new HashMap<>();
+        for (TransportStop stop : stops) stopsById.put(stop.getStopId(), stop);
+
         for (IAgent agent : createdAgents) {
             String stopId = (String) agent.getAttribute("stopId");
             stopIdToAgentMap.put(stopId, agent);
+            // Lien stop → agent, pour mettre à jour departureStopsInfo au changement de journée de service
+            TransportStop stop = stopsById.get(stopId);
+            if (stop != null) stop.setAgent(agent);
         }
 
         for (IAgent agent : createdAgents) {
             @SuppressWarnings("unchecked")
-            IMap<String, IList<GamaPair<String, String>>> departureTripsInfo =
-                    (IMap<String, IList<GamaPair<String, String>>>) agent.getAttribute("departureTripsInfo");
-
-            if (departureTripsInfo == null || departureTripsInfo.isEmpty()) {
-                continue;
-            }
+            IMap<String, IList<GamaPair<String, Integer>>> departureTripsInfo =
+                    (IMap<String, IList<GamaPair<String, Integer>>>) agent.getAttribute("departureTripsInfo");
 
             @SuppressWarnings("unchecked")
-            IMap<String, IList<GamaPair<IAgent, String>>> departureStopsInfo = GamaMapFactory.create(Types.STRING, Types.LIST);
-
-            for (Map.Entry<String, IList<GamaPair<String, String>>> entry : departureTripsInfo.entrySet()) {
-                IList<GamaPair<IAgent, String>> convertedStops = GamaListFactory.create(Types.PAIR);
-                for (GamaPair<String, String> pair : entry.getValue()) {
-                    IAgent stopAgent = stopIdToAgentMap.get(pair.first());
-                    if (stopAgent != null) {
-                        convertedStops.add(new GamaPair<>(stopAgent, pair.getValue(), Types.AGENT, Types.STRING));
+            IMap<String, IList<GamaPair<IAgent, Integer>>> departureStopsInfo = GamaMapFactory.create(Types.STRING, Types.LIST);
+
+            if (departureTripsInfo != null) {
+                for (Map.Entry<String, IList<GamaPair<String, Integer>>> entry : departureTripsInfo.entrySet()) {
+                    IList<GamaPair<IAgent, Integer>> convertedStops = GamaListFactory.create(Types.PAIR);
+                    for (GamaPair<String, Integer> pair : entry.getValue()) {
+                        IAgent stopAgent = stopIdToAgentMap.get(pair.first());
+                        if (stopAgent != null) {
+                            convertedStops.add(new GamaPair<>(stopAgent, pair.getValue(), Types.AGENT, Types.INT));
+                        }
                     }
+                    departureStopsInfo.put(entry.getKey(), convertedStops);
                 }
-                departureStopsInfo.put(entry.getKey(), convertedStops);
             }
 
             agent.setAttribute("departureStopsInfo", departureStopsInfo);
@@ -0,0 +1,264 @@
+package gama.extension.GTFS.skills;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import gama.annotations.precompiler.GamlAnnotations.action;
+import gama.annotations.precompiler.GamlAnnotations.arg;
+import gama.annotations.precompiler.GamlAnnotations.doc;
+import gama.annotations.precompiler.GamlAnnotations.getter;
+import gama.annotations.precompiler.GamlAnnotations.setter;
+import gama.annotations.precompiler.GamlAnnotations.skill;
+import gama.annotations.precompiler.GamlAnnotations.variable;
+import gama.annotations.precompiler.GamlAnnotations.vars;
+import gama.core.metamodel.agent.IAgent;
+import gama.core.metamodel.population.IPopulation;
+import gama.core.runtime.IScope;
+import gama.core.util.GamaDate;
+import gama.core.util.GamaListFactory;
+import gama.core.util.GamaPair;
+import gama.core.util.IList;
+import gama.extension.GTFS.DepartureSchedule;
+import gama.extension.GTFS.GTFS_reader;
+import gama.extension.GTFS.TransportTrip;
+import gama.gaml.skills.Skill;
+import gama.gaml.species.ISpecies;
+import gama.gaml.types.IType;
+import gama.gaml.types.Types;
+
+/**
+ * The skill transit_dispatcher creates one vehicle agent per trip when the trip leaves its first stop,
+ * and kills it when the trip reaches its last stop, following the departure schedule of a GTFS file.
+ * Only the vehicles in service exist at a given time. When trips share a block_id, the vehicle arriving at
+ * the end of a trip waits for the next trip of its block and runs it instead of dying.
+ */
+@skill(name = "transit_dispatcher", doc = @doc("Skill for an agent (usually the world) that creates a vehicle agent of the chosen species when each GTFS trip departs and kills it when the trip reaches its last stop. The vehicles receive trip_id, route_id, route_type, shape_id, departureStopsInfo (list of stop agent :: departure time in seconds), current_stop_index and their location at the first stop. With reuse_vehicles, a vehicle whose trip has a next trip in the same block_id is kept and reassigned to that trip when it departs: the same attributes are updated and the vehicle is moved to the first stop of the new trip."))
+@vars({
+    @variable(name = "gtfs", type = IType.FILE, doc = @doc("The gtfs_file whose trips are dispatched.")),
+    @variable(name = "vehicle_species", type = IType.SPECIES, doc = @doc("The species of the created vehicles.")),
+    @variable(name = "dispatch_time", type = IType.INT, doc = @doc("Time (seconds since the start of the service day) up to which the departures were dispatched, -1 before the first dispatch.")),
+    @variable(name = "start_en_route", type = IType.BOOL, init = "true", doc = @doc("If true (default), the first dispatch also creates the vehicles of the trips already running, at their current position along their shape (see running_trips_at).")),
+    @variable(name = "reuse_vehicles", type = IType.BOOL, init = "true", doc = @doc("If true (default), a vehicle runs the next trip of its block (block_id of trips.txt) instead of dying at the end of its trip.")),
+    @variable(name = "vehicles_in_service", type = IType.LIST, of = IType.AGENT, doc = @doc("The vehicles running a trip or waiting for the next trip of their block."))
+})
+public class TransitDispatcherSkill extends Skill {
+
+    private static final String STATE = "transit_dispatcher_state";
+    private static final int DAY = 86400;
+
+    /**
+     * Vehicle running a trip and the time (seconds since the first dispatched day) it reaches its last stop,
+     * or vehicle waiting for the next trip of its block and the time this trip departs.
+     */
+    private static final class Vehicle {
+        final IAgent agent;
+        final int trip;
+        final long time;
+
+        Vehicle(IAgent agent, int trip, long time) {
+            this.agent = agent;
+            this.trip = trip;
+            this.time = time;
+        }
+    }
+
+    /** Dispatch state of an agent: vehicles ordered by arrival time at their last stop, and waiting vehicles. */
+    private static final class DispatchState {
+        final PriorityQueue<Vehicle> inService = new PriorityQueue<>((a, b) -> Long.compare(a.time, b.time));
+        final Map<Integer, Vehicle> waitingForTrip = new HashMap<>(); // index du trip suivant → véhicule
+        long dayOffset = 0; // secondes ajoutées à chaque passage de minuit
+    }
+
+    @getter("gtfs")
+    public GTFS_reader getGtfs(final IAgent agent) {
+        return (GTFS_reader) agent.getAttribute("gtfs");
+    }
+
+    @setter("gtfs")
+    public void setGtfs(final IAgent agent, final GTFS_reader gtfs) {
+        agent.setAttribute("gtfs", gtfs);
+    }
+
+    @getter("vehicle_species")
+    public ISpecies getVehicleSpecies(final IAgent agent) {
+        return (ISpecies) agent.getAttribute("vehicle_species");
+    }
+
+    @setter("vehicle_species")
+    public void setVehicleSpecies(final IAgent agent, final ISpecies species) {
+        agent.setAttribute("vehicle_species", species);
+    }
+
+    @getter("dispatch_time")
+    public int getDispatchTime(final IAgent agent) {
+        Object time = agent.getAttribute("dispatch_time");
+        return time == null ? -1 : (Integer) time;
+    }
+
+    @setter("dispatch_time")
+    public void setDispatchTime(final IAgent agent, final int time) {
+        agent.setAttribute("dispatch_time", time);
+    }
+
+    @getter("start_en_route")
+    public boolean getStartEnRoute(final IAgent agent) {
+        Object enRoute = agent.getAttribute("start_en_route");
+        return enRoute == null || (Boolean) enRoute;
+    }
+
+    @setter("start_en_route")
+    public void setStartEnRoute(final IAgent agent, final boolean enRoute) {
+        agent.setAttribute("start_en_route", enRoute);
+    }
+
+    @getter("reuse_vehicles")
+    public boolean getReuseVehicles(final IAgent agent) {
+        Object reuse = agent.getAttribute("reuse_vehicles");
+        return reuse == null || (Boolean) reuse;
+    }
+
+    @setter("reuse_vehicles")
+    public void setReuseVehicles(final IAgent agent, final boolean reuse) {
+        agent.setAttribute("reuse_vehicles", reuse);
+    }
+
+    @getter("vehicles_in_service")
+    public IList<IAgent> getVehiclesInService(final IAgent agent) {
+        IList<IAgent> vehicles = GamaListFactory.create(Types.AGENT);
+        DispatchState state = (DispatchState) agent.getAttribute(STATE);
+        if (state != null) {
+            for (Vehicle v : state.inService) {
+                if (!v.agent.dead()) vehicles.add(v.agent);
+            }
+            for (Vehicle v : state.waitingForTrip.values()) {
+                if (!v.agent.dead()) vehicles.add(v.agent);
+            }
+        }
+        return vehicles;
+    }
+
+    @action(
+        name = "dispatch",
+        args = { @arg(name = "time", type = IType.INT, optional = true, doc = @doc("Current time in seconds since the start of the service day (by default the time of day of current_date).")) },
+        doc = @doc("Starts the trips departing since the previous call (all of them, whatever the step), with a waiting vehicle of the same block or a new one, and kills the vehicles whose trip has reached its last stop, unless they wait for the next trip of their block. Crossing midnight is handled. Returns the vehicles starting a trip.")
+    )
+    public IList<IAgent> dispatch(final IScope scope) {
+        IAgent dispatcher = scope.getAgent();
+        IList<IAgent> started = GamaListFactory.create(Types.AGENT);
+        GTFS_reader gtfs = getGtfs(dispatcher);
+        ISpecies species = getVehicleSpecies(dispatcher);
+        if (gtfs == null || species == null) {
+            System.err.println("[ERROR] transit_dispatcher : gtfs et vehicle_species doivent être définis.");
+            return started;
+        }
+        int time = scope.hasArg("time") ? scope.getIntArg("time") : timeOfDay(scope);
+        DispatchState state = (DispatchState) dispatcher.getAttribute(STATE);
+        if (state == null) {
+            state = new DispatchState();
+            dispatcher.setAttribute(STATE, state);
+        }
+        int previous = getDispatchTime(dispatcher);
+        boolean firstDispatch = previous < 0;
+        if (firstDispatch) previous = time - 1;
+        boolean midnight = time < previous;
+        long previousOffset = state.dayOffset;
+        long dispatchedUntil = previousOffset + previous;
+        if (midnight) state.dayOffset += DAY;
+        long now = state.dayOffset + time;
+        boolean reuse = getReuseVehicles(dispatcher);
+
+        // 1. Fins de trip : le véhicule attend le trip suivant de son block, sinon il est supprimé
+        while (!state.inService.isEmpty() && state.inService.peek().time <= now) {
+            Vehicle v = state.inService.poll();
+            if (v.agent.dead()) continue;
+            int next = reuse ? gtfs.getNextTripInBlock(v.trip) : -1;
+            long nextStart = next < 0 ? 0 : v.time - gtfs.getTripEndTime(v.trip) + gtfs.getTripStartTime(next);
+            if (next >= 0 && nextStart > dispatchedUntil && !state.waitingForTrip.containsKey(next)) {
+                state.waitingForTrip.put(next, new Vehicle(v.agent, next, nextStart));
+            } else {
+                v.agent.primDie(scope);
+            }
+        }
+
+        // 2. Départs de (previous, time] : véhicule en attente du même block, sinon création
+        DepartureSchedule schedule = gtfs.getDepartureSchedule();
+        int[] departures = schedule.between(previous, time);
+        List<Map<String, Object>> inits = new ArrayList<>();
+        List<Long> ends = new ArrayList<>();
+        List<Integer> newTrips = new ArrayList<>();
+        if (firstDispatch && getStartEnRoute(dispatcher)) {
+            // Trips déjà partis : véhicules créés à leur position courante, doublons du tableau des départs compris
+            BitSet departing = new BitSet();
+            for (int i : departures) departing.set(schedule.getTripIndex(i));
+            for (int t : gtfs.getTripsRunningAt(time)) {
+                if (departing.get(t)) continue; // lancé avec les départs de (time - 1, time]
+                int start = gtfs.getTripStartTime(t);
+                int tripTime = start > time ? time + DAY : time; // trip de la veille après minuit
+                inits.add(gtfs.getTripStateAt(scope, t, tripTime));
+                ends.add(state.dayOffset + time + gtfs.getTripEndTime(t) - tripTime);
+                newTrips.add(t);
+            }
+        }
+        for (int i : departures) {
+            int t = schedule.getTripIndex(i);
+            // départ du jour précédent (avant minuit, ou heure > 24h) ou du jour courant
+            long offset = schedule.getTime(i) > time ? state.dayOffset - DAY : state.dayOffset;
+            long end = offset + gtfs.getTripEndTime(t);
+            Vehicle waiting = state.waitingForTrip.remove(t);
+            if (waiting != null && !waiting.agent.dead()) {
+                for (Map.Entry<String, Object> e : vehicleInit(gtfs, t).entrySet()) {
+                    if (species.hasVar(e.getKey())) waiting.agent.setDirectVarValue(scope, e.getKey(), e.getValue());
+                }
+                state.inService.add(new Vehicle(waiting.agent, t, end));
+                started.add(waiting.agent);
+            } else {
+                inits.add(vehicleInit(gtfs, t));
+                ends.add(end);
+                newTrips.add(t);
+            }
+        }
+        if (!inits.isEmpty()) {
+            IPopulation<? extends IAgent> population = dispatcher.getPopulationFor(species);
+            IList<? extends IAgent> vehicles = population.createAgents(scope, inits.size(), inits, false, true);
+            for (int k = 0; k < vehicles.size(); k++) {
+                state.inService.add(new Vehicle(vehicles.get(k), newTrips.get(k), ends.get(k)));
+                started.add(vehicles.get(k));
+            }
+        }
+
+        // 3. Véhicules dont le trip suivant n'a pas été lancé (jour de service changé entre-temps)
+        state.waitingForTrip.values().removeIf(v -> {
+            if (v.time > now) return false;
+            if (!v.agent.dead()) v.agent.primDie(scope);
+            return true;
+        });
+
+        setDispatchTime(dispatcher, time);
+        return started;
+    }
+
+    private static Map<String, Object> vehicleInit(final GTFS_reader gtfs, final int tripIndex) {
+        Map<String, Object> init = new HashMap<>();
+        TransportTrip trip = gtfs.getTripByIndex(tripIndex);
+        IList<GamaPair<IAgent, Integer>> stops = gtfs.getAgentStopPairs(tripIndex);
+        init.put("trip_id", gtfs.getTripDictionary().get(tripIndex));
+        if (trip != null) {
+            init.put("route_id", trip.getRouteId());
+            init.put("route_type", trip.getRouteType());
+            init.put("shape_id", trip.getShapeId());
+        }
+        init.put("departureStopsInfo", stops);
+        init.put("current_stop_index", 0);
+        if (!stops.isEmpty()) init.put("location", stops.get(0).getKey().getLocation());
+        return init;
+    }
+
+    private static int timeOfDay(final IScope scope) {
+        GamaDate date = scope.getClock().getCurrentDate();
+        return date == null ? 0 : date.getLocalDateTime().toLocalTime().toSecondOfDay();
+    }
+}
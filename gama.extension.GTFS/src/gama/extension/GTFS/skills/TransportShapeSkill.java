@@ -1,5 +1,7 @@
 package gama.extension.GTFS.skills;
 
+import gama.annotations.precompiler.GamlAnnotations.action;
+import gama.annotations.precompiler.GamlAnnotations.arg;
 import gama.annotations.precompiler.GamlAnnotations.skill;
 import gama.annotations.precompiler.GamlAnnotations.vars;
 import gama.annotations.precompiler.GamlAnnotations.variable;
@@ -12,6 +14,9 @@ import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.linearref.LengthIndexedLine;
 import gama.core.metamodel.agent.IAgent;
+import gama.core.metamodel.shape.IShape;
+import gama.core.runtime.IScope;
+import gama.extension.GTFS.TransportShape;
 import gama.gaml.skills.Skill;
 import gama.gaml.types.IType;
 
@@ -58,6 +63,20 @@ public class TransportShapeSkill extends Skill {
         agent.setAttribute("tripId", tripId);
     }
 
+    @action(
+        name = "shape_lod",
+        args = { @arg(name = "level", type = IType.INT, optional = false, doc = @doc("Level of detail: 0 for the full shape, 1, 2 and 3 for lines simplified with a tolerance of 5, 25 and 100 m (higher levels give level 3).")) },
+        doc = @doc("Returns the geometry of the shape at a level of detail, computed at the first call and then cached. The coarse levels are meant for overview displays, while the vehicles keep moving on the full shape (level 0, the shape of the agent).")
+    )
+    public IShape shapeLod(final IScope scope) {
+        IAgent agent = scope.getAgent();
+        int level = scope.hasArg("level") ? scope.getIntArg("level") : 0;
+        Object shape = agent.getAttribute("gtfs_shape");
+        if (level <= 0 || !(shape instanceof TransportShape)) return agent.getGeometry();
+        IShape lod = ((TransportShape) shape).getLevelOfDetail(scope, level);
+        return lod != null ? lod : agent.getGeometry();
+    }
+
 
 
 }
\ No newline at end of file
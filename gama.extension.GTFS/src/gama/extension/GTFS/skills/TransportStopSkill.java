@@ -24,7 +24,7 @@ import gama.gaml.types.IType;
     @variable(name = "stopId", type = IType.STRING, doc = @doc("The unique ID of the transport stop.")),
     @variable(name = "stopName", type = IType.STRING, doc = @doc("The name of the transport stop.")),
     @variable(name = "routeType", type = IType.INT, doc = @doc("The type of transport route associated with the stop.")),
-    @variable(name = "departureStopsInfo", type = IType.MAP, doc = @doc("Map where keys are trip IDs and values are lists of GamaPair<IAgent, String> (stop agent and departure time).")),
+    @variable(name = "departureStopsInfo", type = IType.MAP, doc = @doc("Map where keys are trip IDs and values are lists of GamaPair<IAgent, Integer> (stop agent and departure time in seconds since the start of the service day).")),
     @variable(name = "tripShapeMap", type = IType.MAP, doc = @doc("Map where keys are trip IDs and values are shape IDs.")),
     @variable(name = "tripNumber", type = IType.INT, doc = @doc("Number of trips starting from this stop."))
 })
@@ -51,8 +51,8 @@ public class TransportStopSkill extends Skill {
     // Getter for departureStopsInfo
     @SuppressWarnings("unchecked")
     @getter("departureStopsInfo")
-    public IMap<String, IList<GamaPair<IAgent, String>>> getDepartureStopsInfo(final IAgent agent) {
-        return (IMap<String, IList<GamaPair<IAgent, String>>>) agent.getAttribute("departureStopsInfo");
+    public IMap<String, IList<GamaPair<IAgent, Integer>>> getDepartureStopsInfo(final IAgent agent) {
+        return (IMap<String, IList<GamaPair<IAgent, Integer>>>) agent.getAttribute("departureStopsInfo");
     }
     
     @getter("tripNumber")
@@ -73,8 +73,8 @@ public class TransportStopSkill extends Skill {
     public boolean isDeparture(final IScope scope) {
         IAgent agent = scope.getAgent();
         @SuppressWarnings("unchecked")
-        IMap<String, IList<GamaPair<IAgent, String>>> departureStopsInfo =
-                (IMap<String, IList<GamaPair<IAgent, String>>>) agent.getAttribute("departureStopsInfo");
+        IMap<String, IList<GamaPair<IAgent, Integer>>> departureStopsInfo =
+                (IMap<String, IList<GamaPair<IAgent, Integer>>>) agent.getAttribute("departureStopsInfo");
 
         return departureStopsInfo != null && !departureStopsInfo.isEmpty();
     }
@@ -82,14 +82,14 @@ public class TransportStopSkill extends Skill {
     // Retrieve departure stop agents for a specific trip
     @getter("agentsForTrip")
     public IList<IAgent> getAgentsForTrip(final IAgent agent, final String tripId) {
-        IMap<String, IList<GamaPair<IAgent, String>>> departureStopsInfo = getDepartureStopsInfo(agent);
+        IMap<String, IList<GamaPair<IAgent, Integer>>> departureStopsInfo = getDepartureStopsInfo(agent);
         if (departureStopsInfo == null || !departureStopsInfo.containsKey(tripId)) {
             System.err.println("[ERROR] No trip info found for tripId=" + tripId + " at stopId=" + getStopId(agent));
             return GamaListFactory.create();
         }
-        IList<GamaPair<IAgent, String>> stopPairs = departureStopsInfo.get(tripId);
+        IList<GamaPair<IAgent, Integer>> stopPairs = departureStopsInfo.get(tripId);
         IList<IAgent> agentsList = GamaListFactory.create();
-        for (GamaPair<IAgent, String> pair : stopPairs) {
+        for (GamaPair<IAgent, Integer> pair : stopPairs) {
             agentsList.add(pair.getKey());
         }
         return agentsList;
@@ -0,0 +1,117 @@
+package GamaGTFSUtils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+
+public class CsvChunkSplitterTest {
+
+    private final List<File> files = new ArrayList<>();
+
+    @After
+    public void deleteFiles() {
+        for (File file : files) file.delete();
+    }
+
+    private File write(String content) throws IOException {
+        File file = File.createTempFile("chunks", ".txt");
+        files.add(file);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<String[]> parse(File file, long start, long end) throws IOException, CsvValidationException {
+        List<String[]> rows = new ArrayList<>();
+        try (CSVReader reader = new CSVReader(new InputStreamReader(CsvChunkSplitter.openRange(file, start, end), StandardCharsets.UTF_8))) {
+            String[] row;
+            while ((row = reader.readNext()) != null) rows.add(row);
+        }
+        return rows;
+    }
+
+    /** The rows read range by range are the rows of the whole file, header excluded. */
+    private static void assertSameRows(File file, long[] bounds) throws IOException, CsvValidationException {
+        List<String[]> whole = parse(file, 0, file.length());
+        List<String[]> chunked = new ArrayList<>(parse(file, 0, bounds[0]));
+        assertEquals("header", 1, chunked.size());
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            assertTrue("bounds increase", bounds[i] < bounds[i + 1]);
+            chunked.addAll(parse(file, bounds[i], bounds[i + 1]));
+        }
+        assertEquals(file.length(), bounds[bounds.length - 1]);
+        assertEquals(whole.size(), chunked.size());
+        for (int r = 0; r < whole.size(); r++) assertArrayEquals("row " + r, whole.get(r), chunked.get(r));
+    }
+
+    @Test
+    public void longQuotedFieldWithLineBreaksAcrossTheSplitOffsets() throws Exception {
+        // un champ entre guillemets de plus de 100 Ko, plein de lignes qui ressemblent à des records
+        StringBuilder csv = new StringBuilder("trip_id,stop_headsign\n");
+        csv.append("t0,\"");
+        for (int i = 0; i < 2500; i++) csv.append("t").append(i).append(",next stop is not a record, ").append(i).append("\n");
+        csv.append("end\"\n");
+        for (int i = 1; i < 2000; i++) csv.append("t").append(i).append(",plain\n");
+        File file = write(csv.toString());
+        for (int chunks : new int[] { 2, 3, 4, 8, 16 }) {
+            long[] bounds = CsvChunkSplitter.split(file, chunks);
+            assertSameRows(file, bounds);
+            assertEquals(2000, parse(file, bounds[0], file.length()).size());
+        }
+    }
+
+    @Test
+    public void quotedLineBreaksAndEscapedQuotesEverywhere() throws Exception {
+        Random random = new Random(3);
+        StringBuilder csv = new StringBuilder("trip_id,stop_id,stop_headsign\n");
+        for (int i = 0; i < 5000; i++) {
+            csv.append("t").append(i).append(',');
+            csv.append(random.nextBoolean() ? "\"s," + i + "\"" : "s" + i).append(',');
+            switch (random.nextInt(4)) {
+                case 0 -> csv.append("\"line\none\nline two\"");
+                case 1 -> csv.append("\"say \"\"hi\"\"\nthen \"\"bye\"\"\"");
+                case 2 -> csv.append("\"\"");
+                default -> csv.append("plain");
+            }
+            csv.append(random.nextInt(5) == 0 ? "\r\n" : "\n");
+        }
+        File file = write(csv.toString());
+        for (int chunks : new int[] { 1, 2, 3, 5, 8, 13, 32 }) {
+            assertSameRows(file, CsvChunkSplitter.split(file, chunks));
+        }
+    }
+
+    @Test
+    public void blankLinesBeforeTheHeaderAreSkipped() throws Exception {
+        File file = write("\n  \n\uFEFFtrip_id,stop_id\nt1,a\nt2,b\n");
+        long[] bounds = CsvChunkSplitter.split(file, 2);
+        assertEquals("\n  \n\uFEFFtrip_id,stop_id\n".getBytes(StandardCharsets.UTF_8).length, bounds[0]);
+        assertEquals(file.length(), bounds[bounds.length - 1]);
+    }
+
+    @Test
+    public void headerOnlyAndTinyFiles() throws Exception {
+        File header = write("trip_id,stop_id\n");
+        assertArrayEquals(new long[] { header.length(), header.length() }, CsvChunkSplitter.split(header, 4));
+        File noBreak = write("trip_id,stop_id");
+        assertArrayEquals(new long[] { noBreak.length(), noBreak.length() }, CsvChunkSplitter.split(noBreak, 4));
+        File oneRow = write("trip_id,stop_id\nt1,a\n");
+        long[] bounds = CsvChunkSplitter.split(oneRow, 8);
+        assertEquals(2, bounds.length); // pas de bloc vide
+        assertSameRows(oneRow, bounds);
+    }
+}
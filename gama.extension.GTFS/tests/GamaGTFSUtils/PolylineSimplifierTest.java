@@ -0,0 +1,117 @@
+package GamaGTFSUtils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PolylineSimplifierTest {
+
+    /** Metres per degree of latitude, as in PolylineSimplifier. */
+    private static final double METERS_PER_DEGREE = 2 * Math.PI * 6378137.0 / 360.0;
+
+    /** A wiggly line around Toulouse: lon0, lat0, lon1, lat1... */
+    private static double[] randomLine(Random random, int n) {
+        double[] lonLat = new double[2 * n];
+        double lon = 1.44, lat = 43.60;
+        for (int i = 0; i < n; i++) {
+            lon += 0.0002 + 0.0001 * random.nextGaussian();
+            lat += 0.0002 * random.nextGaussian();
+            lonLat[2 * i] = lon;
+            lonLat[2 * i + 1] = lat;
+        }
+        return lonLat;
+    }
+
+    /** Distance in metres from a point of the line to the simplified polyline, on the same local projection. */
+    private static double distanceToPolyline(double lon, double lat, double[] polyline, double cosLat) {
+        double px = lon * METERS_PER_DEGREE * cosLat, py = lat * METERS_PER_DEGREE;
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i + 3 < polyline.length; i += 2) {
+            double ax = polyline[i] * METERS_PER_DEGREE * cosLat, ay = polyline[i + 1] * METERS_PER_DEGREE;
+            double bx = polyline[i + 2] * METERS_PER_DEGREE * cosLat, by = polyline[i + 3] * METERS_PER_DEGREE;
+            double dx = bx - ax, dy = by - ay, length2 = dx * dx + dy * dy;
+            double t = length2 == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / length2));
+            best = Math.min(best, Math.hypot(ax + t * dx - px, ay + t * dy - py));
+        }
+        return best;
+    }
+
+    private static double cosMeanLat(double[] lonLat) {
+        double sum = 0;
+        for (int i = 1; i < lonLat.length; i += 2) sum += lonLat[i];
+        return Math.cos(Math.toRadians(sum / (lonLat.length / 2)));
+    }
+
+    @Test
+    public void endpointsAreAlwaysKept() {
+        Random random = new Random(1);
+        for (double tolerance : new double[] { 1, 10, 100, 100000 }) {
+            double[] line = randomLine(random, 200);
+            double[] simplified = PolylineSimplifier.simplify(line, tolerance);
+            assertTrue(simplified.length >= 4);
+            assertEquals(line[0], simplified[0], 0);
+            assertEquals(line[1], simplified[1], 0);
+            assertEquals(line[line.length - 2], simplified[simplified.length - 2], 0);
+            assertEquals(line[line.length - 1], simplified[simplified.length - 1], 0);
+        }
+    }
+
+    @Test
+    public void everyPointStaysWithinTheTolerance() {
+        Random random = new Random(2);
+        for (double tolerance : new double[] { 2, 5, 25, 100 }) {
+            double[] line = randomLine(random, 1000);
+            double[] simplified = PolylineSimplifier.simplify(line, tolerance);
+            assertTrue(simplified.length < line.length);
+            double cosLat = cosMeanLat(line);
+            for (int i = 0; i < line.length; i += 2) {
+                double distance = distanceToPolyline(line[i], line[i + 1], simplified, cosLat);
+                assertTrue("point " + i / 2 + " at " + distance + " m", distance <= tolerance + 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void keptPointsAreOriginalPointsInOrder() {
+        double[] line = randomLine(new Random(3), 500);
+        double[] simplified = PolylineSimplifier.simplify(line, 10);
+        int i = 0;
+        for (int k = 0; k < simplified.length; k += 2) {
+            while (i < line.length && (line[i] != simplified[k] || line[i + 1] != simplified[k + 1])) i += 2;
+            assertTrue("point " + k / 2 + " is not an original point in order", i < line.length);
+            i += 2;
+        }
+    }
+
+    @Test
+    public void straightLineKeepsItsEndpoints() {
+        double[] line = new double[2 * 50];
+        for (int i = 0; i < 50; i++) {
+            line[2 * i] = 1.40 + 0.001 * i;
+            line[2 * i + 1] = 43.60;
+        }
+        assertArrayEquals(new double[] { line[0], line[1], line[98], line[99] }, PolylineSimplifier.simplify(line, 0.5), 0);
+    }
+
+    @Test
+    public void deviationAboveTheToleranceIsKept() {
+        // sommet à environ 11 m de la corde
+        double[] line = { 1.40, 43.60, 1.401, 43.6001, 1.402, 43.60 };
+        assertEquals(6, PolylineSimplifier.simplify(line, 10).length);
+        assertEquals(4, PolylineSimplifier.simplify(line, 12).length);
+    }
+
+    @Test
+    public void nothingToSimplify() {
+        double[] line = randomLine(new Random(4), 100);
+        assertSame(line, PolylineSimplifier.simplify(line, 0));
+        assertSame(line, PolylineSimplifier.simplify(line, -5));
+        double[] twoPoints = { 1.4, 43.6, 1.5, 43.7 };
+        assertSame(twoPoints, PolylineSimplifier.simplify(twoPoints, 1000));
+    }
+}
@@ -0,0 +1,107 @@
+package gama.extension.GTFS;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DepartureScheduleTest {
+
+    private static final int DAY = 86400;
+
+    /** One trip per (trip_id, origin stop, departure time), with a second stop 10 minutes later. */
+    private static StopTimesTable table(Object... tripStopTime) {
+        StopTimesTable.Builder builder = new StopTimesTable.Builder(0);
+        for (int i = 0; i < tripStopTime.length; i += 3) {
+            String trip = (String) tripStopTime[i];
+            int time = (Integer) tripStopTime[i + 2];
+            builder.add(trip, (String) tripStopTime[i + 1], time, time, 1, 0f);
+            builder.add(trip, "terminus", time + 600, time + 600, 2, 0f);
+        }
+        return builder.build();
+    }
+
+    /** Departures of every trip from its first stop, grouped by stop index. */
+    private static DepartureSchedule schedule(StopTimesTable table) {
+        List<List<Integer>> byStop = new ArrayList<>();
+        for (int s = 0; s < table.getStopCount(); s++) byStop.add(new ArrayList<>());
+        for (int t = 0; t < table.getTripCount(); t++) byStop.get(table.getStopIndex(table.getFirstRow(t))).add(t);
+        int[][] departures = new int[byStop.size()][];
+        for (int s = 0; s < departures.length; s++) departures[s] = byStop.get(s).stream().mapToInt(Integer::intValue).toArray();
+        return new DepartureSchedule(departures, table);
+    }
+
+    private static String[] tripIds(StopTimesTable table, DepartureSchedule schedule, int[] indices) {
+        String[] ids = new String[indices.length];
+        for (int k = 0; k < indices.length; k++) ids[k] = table.getTripId(schedule.getTripIndex(indices[k]));
+        return ids;
+    }
+
+    @Test
+    public void departuresAreSortedByTimeThenByStop() {
+        StopTimesTable table = table("late", "b", 30000, "tie_b", "b", 28800, "early", "a", 3600, "tie_a", "a", 28800);
+        DepartureSchedule schedule = schedule(table);
+        assertEquals(4, schedule.size());
+        for (int i = 1; i < schedule.size(); i++) {
+            boolean ordered = schedule.getTime(i - 1) < schedule.getTime(i)
+                    || schedule.getTime(i - 1) == schedule.getTime(i) && schedule.getStopIndex(i - 1) <= schedule.getStopIndex(i);
+            assertEquals("departure " + i, true, ordered);
+        }
+    }
+
+    @Test
+    public void intervalIsOpenOnTheLeftAndClosedOnTheRight() {
+        StopTimesTable table = table("t1", "a", 28800, "t2", "b", 28800, "t3", "a", 28860);
+        DepartureSchedule schedule = schedule(table);
+        assertArrayEquals(new String[] { "t1", "t2" }, tripIds(table, schedule, schedule.between(28799, 28800)));
+        assertArrayEquals(new String[] { "t3" }, tripIds(table, schedule, schedule.between(28800, 28860)));
+        assertEquals(0, schedule.between(28860, 30000).length);
+    }
+
+    @Test
+    public void intervalCrossingMidnightGivesLateDeparturesThenTheNewDay() {
+        // 23:50, 24:10 (trip of the service day after midnight), 00:05
+        StopTimesTable table = table("evening", "a", 85800, "after_midnight", "a", 87000, "morning", "a", 300);
+        DepartureSchedule schedule = schedule(table);
+        assertArrayEquals(new String[] { "evening", "after_midnight", "morning" },
+                tripIds(table, schedule, schedule.between(85000, 600)));
+        assertArrayEquals(new String[] { "after_midnight", "morning" }, tripIds(table, schedule, schedule.between(86000, 700)));
+        assertEquals(0, schedule.between(86000, 250).length);
+    }
+
+    @Test
+    public void departuresAfterMidnightAreAlsoGivenOnTheNextDay() {
+        StopTimesTable table = table("evening", "a", 85800, "after_midnight", "a", 87000, "morning", "a", 300);
+        DepartureSchedule schedule = schedule(table);
+        assertArrayEquals(new String[] { "after_midnight" }, tripIds(table, schedule, schedule.between(540, 600)));
+        assertArrayEquals(new String[] { "after_midnight", "morning" }, tripIds(table, schedule, schedule.between(250, 700)));
+        assertEquals(0, schedule.between(600, 85000).length);
+    }
+
+    @Test
+    public void consecutiveStepsGiveEveryDepartureOnce() {
+        Random random = new Random(13);
+        List<Object> rows = new ArrayList<>();
+        for (int t = 0; t < 500; t++) {
+            rows.add("trip" + t);
+            rows.add("stop" + random.nextInt(20));
+            rows.add(random.nextInt(DAY + 4 * 3600)); // jusqu'à 28:00:00
+        }
+        StopTimesTable table = table(rows.toArray());
+        DepartureSchedule schedule = schedule(table);
+        for (int step : new int[] { 1, 60, 420, 3600, 5000 }) {
+            int[] seen = new int[table.getTripCount()];
+            int previous = 0;
+            for (int time = step; time < DAY; time += step) {
+                for (int i : schedule.between(previous, time)) seen[schedule.getTripIndex(i)]++;
+                previous = time;
+            }
+            for (int i : schedule.between(previous, 0)) seen[schedule.getTripIndex(i)]++; // minuit
+            for (int t = 0; t < seen.length; t++) assertEquals("step " + step + ", " + table.getTripId(t), 1, seen[t]);
+        }
+    }
+}
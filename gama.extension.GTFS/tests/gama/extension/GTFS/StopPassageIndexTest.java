@@ -0,0 +1,134 @@
+package gama.extension.GTFS;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StopPassageIndexTest {
+
+    private static final int DAY = 86400;
+
+    /**
+     * Trip "a" (a1 → a2 → a3) at 08:00, "b" on the same stops at 08:00 too, "night" (a1 → a2) at 23:55 and
+     * 24:05, "early" (a2 → a3) at 00:02.
+     */
+    private static StopTimesTable table() {
+        StopTimesTable.Builder builder = new StopTimesTable.Builder(0);
+        builder.add("a", "s1", 28800, 28800, 1, 0f);
+        builder.add("a", "s2", 29100, 29160, 2, 0f);
+        builder.add("a", "s3", 29400, StopTimesTable.NO_TIME, 3, 0f);
+        builder.add("b", "s1", 28800, 28800, 1, 0f);
+        builder.add("b", "s2", 29100, 29100, 2, 0f);
+        builder.add("b", "s3", 29400, 29400, 3, 0f);
+        builder.add("night", "s1", 86100, 86100, 1, 0f);
+        builder.add("night", "s2", 86700, 86700, 2, 0f);
+        builder.add("early", "s2", 120, 120, 1, 0f);
+        builder.add("early", "s3", 400, 400, 2, 0f);
+        return builder.build();
+    }
+
+    private static StopPassageIndex index(StopTimesTable table) {
+        int[] trips = new int[table.getTripCount()];
+        for (int t = 0; t < trips.length; t++) trips[t] = t;
+        return new StopPassageIndex(trips, table);
+    }
+
+    private static String[] passages(StopTimesTable table, StopPassageIndex index, int[] positions) {
+        String[] found = new String[positions.length];
+        for (int k = 0; k < positions.length; k++) {
+            found[k] = table.getTripId(index.getTripIndex(positions[k])) + "@" + index.getTime(positions[k]);
+        }
+        return found;
+    }
+
+    @Test
+    public void passagesAreSortedByTimeThenByRow() {
+        StopTimesTable table = table();
+        StopPassageIndex index = index(table);
+        int s1 = table.indexOfStop("s1");
+        assertArrayEquals(new String[] { "a@28800", "b@28800", "night@86100" },
+                passages(table, index, index.passagesBetween(s1, 0, DAY)));
+        for (int s = 0; s < table.getStopCount(); s++) {
+            for (int k = index.getStopStart(s) + 1; k < index.getStopEnd(s); k++) {
+                assertTrue(index.getTime(k - 1) < index.getTime(k)
+                        || index.getTime(k - 1) == index.getTime(k) && index.getRow(k - 1) < index.getRow(k));
+            }
+        }
+    }
+
+    @Test
+    public void lastStopHasArrivalTimeAndNoDeparture() {
+        StopTimesTable table = table();
+        StopPassageIndex index = index(table);
+        int s3 = table.indexOfStop("s3");
+        // "a" n'a pas d'heure de départ au terminus : heure d'arrivée
+        assertArrayEquals(new String[] { "a@29400", "b@29400" }, passages(table, index, index.passagesBetween(s3, 29400, 29400)));
+        for (int k : index.passagesBetween(s3, 29400, 29400)) assertTrue(index.isLastStopOfTrip(k));
+        assertEquals(0, index.nextDepartures(s3, 29000, 5).length);
+        int s2 = table.indexOfStop("s2");
+        assertArrayEquals(new String[] { "b@29100", "a@29160" }, passages(table, index, index.nextDepartures(s2, 29000, 2)));
+        assertFalse(index.isLastStopOfTrip(index.nextDepartures(s2, 29000, 1)[0]));
+    }
+
+    @Test
+    public void windowCrossingMidnightGivesLatePassagesThenTheNewDay() {
+        StopTimesTable table = table();
+        StopPassageIndex index = index(table);
+        int s2 = table.indexOfStop("s2");
+        assertArrayEquals(new String[] { "night@86700", "early@120" }, passages(table, index, index.passagesBetween(s2, 86000, 300)));
+        // heures après 24:00:00 aussi données le lendemain, avant les autres
+        assertArrayEquals(new String[] { "night@86700", "early@120" }, passages(table, index, index.passagesBetween(s2, 100, 400)));
+        assertArrayEquals(new String[] { "early@120" }, passages(table, index, index.passagesBetween(s2, 100, 200)));
+    }
+
+    @Test
+    public void passagesBetweenMatchesBruteForce() {
+        Random random = new Random(11);
+        StopTimesTable.Builder builder = new StopTimesTable.Builder(0);
+        for (int t = 0; t < 300; t++) {
+            int time = random.nextInt(DAY + 3 * 3600);
+            int nbStops = 2 + random.nextInt(8);
+            for (int k = 0; k < nbStops; k++) {
+                builder.add("t" + t, "s" + random.nextInt(15), time, time, k, 0f);
+                time += 60 * random.nextInt(4); // arrêts à la même heure possibles
+            }
+        }
+        StopTimesTable table = builder.build();
+        StopPassageIndex index = index(table);
+        for (int q = 0; q < 2000; q++) {
+            int s = random.nextInt(table.getStopCount());
+            int from = random.nextInt(DAY);
+            int to = q % 3 == 0 ? random.nextInt(DAY) : Math.min(DAY - 1, from + random.nextInt(3600));
+            List<String> expected = new ArrayList<>();
+            if (to >= from) {
+                expected.addAll(bruteForce(table, s, from + DAY, to + DAY));
+                expected.addAll(bruteForce(table, s, from, to));
+            } else {
+                expected.addAll(bruteForce(table, s, from, to + DAY));
+                expected.addAll(bruteForce(table, s, 0, to));
+            }
+            assertEquals("stop " + s + " [" + from + ", " + to + "]", expected,
+                    List.of(passages(table, index, index.passagesBetween(s, from, to))));
+        }
+    }
+
+    /** Passages at the stop during [from, to], sorted by time then by row. */
+    private static List<String> bruteForce(StopTimesTable table, int stop, int from, int to) {
+        List<int[]> found = new ArrayList<>();
+        for (int row = 0; row < table.size(); row++) {
+            int time = table.getDepartureTime(row) != StopTimesTable.NO_TIME ? table.getDepartureTime(row) : table.getArrivalTime(row);
+            if (table.getStopIndex(row) == stop && time >= from && time <= to) found.add(new int[] { time, row });
+        }
+        found.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+        List<String> passages = new ArrayList<>();
+        for (int[] p : found) passages.add(table.getTripId(table.getTripIndex(p[1])) + "@" + p[0]);
+        return passages;
+    }
+}
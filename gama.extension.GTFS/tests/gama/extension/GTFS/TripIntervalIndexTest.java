@@ -0,0 +1,78 @@
+package gama.extension.GTFS;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class TripIntervalIndexTest {
+
+    /** Trips whose [start, end] overlap [from, to], sorted by start time then by position, as the index does. */
+    private static int[] bruteForce(int[] trips, int[] starts, int[] ends, int from, int to) {
+        return IntStream.range(0, trips.length)
+                .filter(k -> starts[k] <= to && Math.max(starts[k], ends[k]) >= from)
+                .boxed()
+                .sorted((a, b) -> starts[a] != starts[b] ? Integer.compare(starts[a], starts[b]) : Integer.compare(a, b))
+                .mapToInt(k -> trips[k])
+                .toArray();
+    }
+
+    @Test
+    public void boundsAreInclusive() {
+        TripIntervalIndex index = new TripIntervalIndex(new int[] { 7, 8, 9 }, new int[] { 100, 200, 300 }, new int[] { 200, 300, 400 });
+        assertArrayEquals(new int[] { 7, 8 }, index.runningAt(200));
+        assertArrayEquals(new int[] { 9 }, index.overlapping(400, 500));
+        assertArrayEquals(new int[] { 7 }, index.overlapping(0, 100));
+        assertEquals(0, index.overlapping(401, 500).length);
+        assertEquals(0, index.runningAt(99).length);
+    }
+
+    @Test
+    public void tripsStartingAtTheSameTimeAreAllFound() {
+        TripIntervalIndex index = new TripIntervalIndex(new int[] { 4, 2, 3 }, new int[] { 500, 500, 500 }, new int[] { 600, 900, 500 });
+        assertArrayEquals(new int[] { 4, 2, 3 }, index.runningAt(500));
+        assertArrayEquals(new int[] { 4, 2 }, index.runningAt(600));
+        assertArrayEquals(new int[] { 2 }, index.overlapping(700, 800));
+    }
+
+    @Test
+    public void endBeforeStartIsAnInstant() {
+        TripIntervalIndex index = new TripIntervalIndex(new int[] { 1 }, new int[] { 1000 }, new int[] { 0 });
+        assertArrayEquals(new int[] { 1 }, index.runningAt(1000));
+        assertEquals(0, index.runningAt(500).length);
+        assertEquals(0, index.getMaxDuration());
+    }
+
+    @Test
+    public void emptyIndex() {
+        TripIntervalIndex index = new TripIntervalIndex(new int[0], new int[0], new int[0]);
+        assertEquals(0, index.size());
+        assertEquals(0, index.overlapping(0, 100000).length);
+    }
+
+    @Test
+    public void overlappingMatchesBruteForce() {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            int n = 1 + random.nextInt(2000);
+            int[] trips = new int[n], starts = new int[n], ends = new int[n];
+            for (int k = 0; k < n; k++) {
+                trips[k] = k;
+                starts[k] = random.nextInt(100000);
+                // quelques trips très longs, beaucoup de départs identiques
+                if (k % 10 == 0) starts[k] = starts[k] / 3600 * 3600;
+                ends[k] = starts[k] + (k % 50 == 0 ? random.nextInt(40000) : random.nextInt(5400));
+            }
+            TripIntervalIndex index = new TripIntervalIndex(trips, starts, ends);
+            for (int q = 0; q < 200; q++) {
+                int from = random.nextInt(110000);
+                int to = from + (q % 3 == 0 ? 0 : random.nextInt(7200));
+                assertArrayEquals("round " + round + " [" + from + ", " + to + "]",
+                        bruteForce(trips, starts, ends, from, to), index.overlapping(from, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package gama.extension.GTFS;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TripPatternsTest {
+
+    private static void addTrip(StopTimesTable.Builder builder, String tripId, int start, String[] stops, int[] runningTimes) {
+        int time = start;
+        for (int k = 0; k < stops.length; k++) {
+            if (k > 0) time += runningTimes[k - 1];
+            builder.add(tripId, stops[k], time, time + 30, k + 1, 0f);
+        }
+    }
+
+    @Test
+    public void tripsOnTheSameStopsShareTheirPatternAndTheirOffsets() {
+        String[] line = { "a", "b", "c" };
+        StopTimesTable.Builder builder = new StopTimesTable.Builder(0);
+        addTrip(builder, "late", 30000, line, new int[] { 300, 420 });
+        addTrip(builder, "early", 20000, line, new int[] { 300, 420 });
+        addTrip(builder, "slow", 25000, line, new int[] { 600, 420 });
+        addTrip(builder, "reverse", 20000, new String[] { "c", "b", "a" }, new int[] { 300, 420 });
+        StopTimesTable table = builder.build();
+        TripPatterns patterns = table.getTripPatterns();
+        int late = table.indexOfTrip("late"), early = table.indexOfTrip("early");
+        int slow = table.indexOfTrip("slow"), reverse = table.indexOfTrip("reverse");
+
+        assertEquals(2, patterns.getPatternCount());
+        assertEquals(patterns.getPatternOf(late), patterns.getPatternOf(early));
+        assertEquals(patterns.getPatternOf(late), patterns.getPatternOf(slow));
+        assertNotEquals(patterns.getPatternOf(late), patterns.getPatternOf(reverse));
+        // mêmes temps de parcours : un seul vecteur de décalages, quelle que soit l'heure de départ
+        assertEquals(patterns.getOffsetVectorOf(late), patterns.getOffsetVectorOf(early));
+        assertEquals(patterns.getOffsetVectorOf(early), patterns.getOffsetVectorOf(reverse));
+        assertNotEquals(patterns.getOffsetVectorOf(late), patterns.getOffsetVectorOf(slow));
+        assertEquals(2, patterns.getOffsetVectorCount());
+
+        int[] stops = { table.indexOfStop("a"), table.indexOfStop("b"), table.indexOfStop("c") };
+        assertArrayEquals(stops, patterns.getStops(patterns.getPatternOf(late)));
+        // trips d'un pattern triés par heure de départ
+        assertArrayEquals(new int[] { early, slow, late }, patterns.getTrips(patterns.getPatternOf(late)));
+    }
+
+    @Test
+    public void missingTimesStayMissing() {
+        StopTimesTable.Builder builder = new StopTimesTable.Builder(0);
+        builder.add("t", "a", StopTimesTable.NO_TIME, 3600, 1, 0f);
+        builder.add("t", "b", StopTimesTable.NO_TIME, StopTimesTable.NO_TIME, 2, 0f);
+        builder.add("t", "c", 4000, StopTimesTable.NO_TIME, 3, 0f);
+        StopTimesTable table = builder.build();
+        TripPatterns patterns = table.getTripPatterns();
+        int t = table.indexOfTrip("t");
+        assertEquals(3600, patterns.getStartTime(t));
+        assertEquals(StopTimesTable.NO_TIME, patterns.getArrivalTime(t, 0));
+        assertEquals(3600, patterns.getDepartureTime(t, 0));
+        assertEquals(StopTimesTable.NO_TIME, patterns.getArrivalTime(t, 1));
+        assertEquals(StopTimesTable.NO_TIME, patterns.getDepartureTime(t, 1));
+        assertEquals(4000, patterns.getArrivalTime(t, 2));
+        assertEquals(StopTimesTable.NO_TIME, patterns.getDepartureTime(t, 2));
+        int row = table.getTripStart(t);
+        assertEquals(StopTimesTable.NO_TIME, table.getArrivalTime(row + 1));
+        assertEquals(4000, table.getArrivalTime(row + 2));
+    }
+
+    @Test
+    public void rowTimesAreRebuiltExactly() {
+        Random random = new Random(3);
+        StopTimesTable.Builder builder = new StopTimesTable.Builder(0);
+        String[][] lines = { { "a", "b", "c", "d" }, { "d", "c", "b", "a" }, { "a", "e" } };
+        int[][] arrivals = new int[500][];
+        for (int t = 0; t < arrivals.length; t++) {
+            String[] line = lines[random.nextInt(lines.length)];
+            int time = random.nextInt(100000);
+            arrivals[t] = new int[line.length];
+            for (int k = 0; k < line.length; k++) {
+                if (k > 0) time += 60 * (2 + random.nextInt(3));
+                arrivals[t][k] = time;
+            }
+            // lignes dans le désordre pour un trip sur deux : la table les trie par stop_sequence
+            for (int i = 0; i < line.length; i++) {
+                int k = t % 2 == 0 ? i : line.length - 1 - i;
+                builder.add("t" + t, line[k], arrivals[t][k], arrivals[t][k] + 30, k + 1, 0f);
+            }
+        }
+        StopTimesTable table = builder.build();
+        TripPatterns patterns = table.getTripPatterns();
+        assertEquals(lines.length, patterns.getPatternCount());
+        for (int t = 0; t < arrivals.length; t++) {
+            int trip = table.indexOfTrip("t" + t);
+            int start = table.getTripStart(trip);
+            assertEquals(arrivals[t].length, table.getTripEnd(trip) - start);
+            assertEquals(arrivals[t][0] + 30, patterns.getStartTime(trip));
+            for (int k = 0; k < arrivals[t].length; k++) {
+                assertEquals(arrivals[t][k], table.getArrivalTime(start + k));
+                assertEquals(arrivals[t][k] + 30, table.getDepartureTime(start + k));
+                assertEquals(arrivals[t][k], patterns.getArrivalTime(trip, k));
+            }
+        }
+    }
+}